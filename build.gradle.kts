@@ -14,18 +14,60 @@ plugins {
     application
 }
 
+java {
+    // Java 11 is the minimum: the sorts commit jdk.jfr events (SortEvent), which JDK 8 does not have before 8u262
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
 repositories {
     // Use jcenter for resolving your dependencies.
     // You can declare any Maven/Ivy/file repository here.
     jcenter()
 }
 
+sourceSets {
+    // JMH benchmarks live in src/jmh/java and see the main classes
+    create("jmh") {
+        compileClasspath += sourceSets["main"].output
+        runtimeClasspath += sourceSets["main"].output
+    }
+}
+
+configurations {
+    "jmhImplementation" {
+        extendsFrom(configurations["implementation"])
+    }
+}
+
 dependencies {
     // This dependency is found on compile classpath of this component and consumers.
     implementation("com.google.guava:guava:26.0-jre")
 
     // Use JUnit test framework
     testImplementation("junit:junit:4.12")
+
+    // Use JMH for benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.21")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.21")
+}
+
+// Run the benchmarks with ./gradlew jmh, pass JMH options with -Pjmh.args="...", e.g. -Pjmh.args="Quick -p size=100"
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks."
+    group = "verification"
+
+    classpath = sourceSets["jmh"].runtimeClasspath
+    main = "org.openjdk.jmh.Main"
+
+    val resultFile = "$buildDir/reports/jmh/results.json"
+    args("-prof", "gc", "-rf", "json", "-rff", resultFile)
+    if (project.hasProperty("jmh.args"))
+        args(project.property("jmh.args").toString().split(" ").filter { it.isNotBlank() })
+
+    doFirst {
+        file(resultFile).parentFile.mkdirs()
+    }
 }
 
 application {
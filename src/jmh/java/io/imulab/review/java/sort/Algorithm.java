@@ -0,0 +1,107 @@
+package io.imulab.review.java.sort;
+
+/**
+ * The comparison sorts under benchmark, over {@link Comparable} arrays.
+ */
+public enum Algorithm {
+
+    INSERTION {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Insertion.sort(a, metrics);
+        }
+    },
+
+    SELECTION {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Selection.sort(a, metrics);
+        }
+    },
+
+    SHELL {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Shell.sort(a, new Shell.ThreePlusOne(), metrics);
+        }
+    },
+
+    QUICK {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Quick.sort(a, metrics);
+        }
+    },
+
+    QUICK_THREE_WAY {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Quick.threeWaySort(a, metrics);
+        }
+    },
+
+    MERGE {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Merge.sort(a, metrics);
+        }
+    },
+
+    MERGE_BOTTOM_UP {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Merge.bottomUpSort(a, metrics);
+        }
+    },
+
+    MERGE_PARALLEL {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Merge.parallelSort(a);
+        }
+    },
+
+    SAMPLE_PARALLEL {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            SampleSort.parallelSort(a);
+        }
+    },
+
+    SORTS {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Sorts.sort(a);
+        }
+    },
+
+    NATURAL_MERGE {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            NaturalMerge.sort(a);
+        }
+    },
+
+    HEAP {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Heap.sort(a, metrics);
+        }
+    },
+
+    HEAP_QUATERNARY {
+        @Override
+        <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics) {
+            Heap.sort(a, 0, a.length - 1, 4, metrics);
+        }
+    };
+
+    <E extends Comparable<E>> void sort(E[] a) {
+        sort(a, SortMetrics.NONE);
+    }
+
+    /**
+     * Sort, reporting to the metrics. The parallel sorts, natural merge sort and the facade are not instrumented and report nothing.
+     */
+    abstract <E extends Comparable<E>> void sort(E[] a, SortMetrics metrics);
+}
@@ -0,0 +1,89 @@
+package io.imulab.review.java.sort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the work each comparison sort does on each input distribution, reported as the "compares", "swaps", "copies"
+ * and "levels" (recursion depth) secondary results. The counters are reset before every sort and JMH reads them at the
+ * end of the iteration, so what they report is the count of a single sort (inputs are generated from a fixed seed, so
+ * every sort of a trial is the same).
+ *
+ * Compares are counted by the keys themselves, so they are reported for every sort. Everything else comes from
+ * {@link SortCounters}, and is only reported by the instrumented sorts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class CountingBenchmark {
+
+    @Param({"INSERTION", "SELECTION", "SHELL", "QUICK", "QUICK_THREE_WAY", "MERGE", "MERGE_BOTTOM_UP",
+            "NATURAL_MERGE", "HEAP", "HEAP_QUATERNARY"})
+    Algorithm algorithm;
+
+    @Param({"1000", "100000"})
+    int size;
+
+    @Param
+    Distribution distribution;
+
+    private int[] keys;
+    private Key[] work;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = distribution.ints(size);
+        work = new Key[size];
+    }
+
+    @Benchmark
+    public Key[] sort(Counters counters) {
+        for (int i = 0; i < size; i++)
+            work[i] = new Key(keys[i], counters);
+
+        SortCounters sortCounters = SortCounters.current();
+        sortCounters.reset();
+        counters.compares = 0;
+
+        algorithm.sort(work, sortCounters);
+
+        counters.swaps = sortCounters.swaps();
+        counters.copies = sortCounters.copies();
+        counters.levels = sortCounters.levels().length;
+        return work;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long compares;
+        public long swaps;
+        public long copies;
+        public long levels;
+    }
+
+    /**
+     * An int key that counts its compares.
+     */
+    static final class Key implements Comparable<Key> {
+
+        private final int value;
+        private final Counters counters;
+
+        Key(int value, Counters counters) {
+            this.value = value;
+            this.counters = counters;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            counters.compares++;
+            return Integer.compare(value, o.value);
+        }
+    }
+}
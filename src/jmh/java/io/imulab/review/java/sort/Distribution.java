@@ -0,0 +1,110 @@
+package io.imulab.review.java.sort;
+
+import java.util.SplittableRandom;
+
+/**
+ * Input distributions for the sort benchmarks. All of them are generated from a fixed seed, so every algorithm sees
+ * exactly the same input.
+ */
+public enum Distribution {
+
+    /**
+     * Uniformly random keys.
+     */
+    RANDOM {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = random.nextInt();
+        }
+    },
+
+    /**
+     * Already in ascending order.
+     */
+    SORTED {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = i;
+        }
+    },
+
+    /**
+     * In descending order.
+     */
+    REVERSED {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = a.length - i;
+        }
+    },
+
+    /**
+     * Random keys drawn from only 16 distinct values.
+     */
+    FEW_UNIQUE {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = random.nextInt(16);
+        }
+    },
+
+    /**
+     * Ascending up to the middle, then descending.
+     */
+    ORGAN_PIPE {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = Math.min(i, a.length - i);
+        }
+    },
+
+    /**
+     * Ascending runs of 1000 keys each.
+     */
+    SAWTOOTH {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = i % 1000;
+        }
+    },
+
+    /**
+     * Sorted, except for 1% of the keys being swapped with a random other key.
+     */
+    NEARLY_SORTED {
+        @Override
+        void fill(int[] a, SplittableRandom random) {
+            SORTED.fill(a, random);
+            for (int k = 0; k < a.length / 100; k++) {
+                int i = random.nextInt(a.length), j = random.nextInt(a.length);
+                int t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+        }
+    };
+
+    private static final long SEED = 0x5EED;
+
+    abstract void fill(int[] a, SplittableRandom random);
+
+    int[] ints(int size) {
+        int[] a = new int[size];
+        fill(a, new SplittableRandom(SEED));
+        return a;
+    }
+
+    Integer[] integers(int size) {
+        int[] keys = ints(size);
+        Integer[] a = new Integer[size];
+        for (int i = 0; i < size; i++)
+            a[i] = keys[i];
+        return a;
+    }
+}
@@ -0,0 +1,83 @@
+package io.imulab.review.java.sort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the int[] sorts, with {@link Arrays#sort(int[])} and {@link Arrays#parallelSort(int[])} as the
+ * baselines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PrimitiveSortBenchmark {
+
+    @Param({"JDK", "JDK_PARALLEL", "QUICK", "SAMPLE_PARALLEL", "MERGE", "HEAP", "HEAP_BINARY", "HEAP_QUATERNARY", "SHELL",
+            "RADIX", "SORTS"})
+    String algorithm;
+
+    @Param({"100", "10000", "1000000", "100000000"})
+    int size;
+
+    @Param
+    Distribution distribution;
+
+    private int[] source;
+    private int[] work;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = distribution.ints(size);
+        work = new int[size];
+    }
+
+    @Benchmark
+    public int[] sort() {
+        System.arraycopy(source, 0, work, 0, size);
+
+        switch (algorithm) {
+            case "JDK":
+                Arrays.sort(work);
+                break;
+            case "JDK_PARALLEL":
+                Arrays.parallelSort(work);
+                break;
+            case "QUICK":
+                Quick.sort(work);
+                break;
+            case "SAMPLE_PARALLEL":
+                SampleSort.parallelSort(work);
+                break;
+            case "MERGE":
+                Merge.sort(work);
+                break;
+            case "HEAP":
+                Heap.sort(work);
+                break;
+            case "HEAP_BINARY":
+                Heap.sort(work, 0, size - 1, 2);
+                break;
+            case "HEAP_QUATERNARY":
+                Heap.sort(work, 0, size - 1, 4);
+                break;
+            case "SHELL":
+                Shell.sort(work, null);
+                break;
+            case "RADIX":
+                Radix.sort(work);
+                break;
+            case "SORTS":
+                Sorts.sort(work);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown algorithm " + algorithm);
+        }
+
+        return work;
+    }
+}
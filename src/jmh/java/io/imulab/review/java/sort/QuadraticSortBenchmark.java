@@ -0,0 +1,42 @@
+package io.imulab.review.java.sort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the O(N^2) sorts. Sizes stop at 1e4, since sorting 1e8 items this way would take days.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuadraticSortBenchmark {
+
+    @Param({"INSERTION", "SELECTION"})
+    Algorithm algorithm;
+
+    @Param({"100", "1000", "10000"})
+    int size;
+
+    @Param
+    Distribution distribution;
+
+    private Integer[] source;
+    private Integer[] work;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = distribution.integers(size);
+        work = new Integer[size];
+    }
+
+    @Benchmark
+    public Integer[] sort() {
+        System.arraycopy(source, 0, work, 0, size);
+        algorithm.sort(work);
+        return work;
+    }
+}
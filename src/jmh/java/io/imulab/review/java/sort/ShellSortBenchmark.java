@@ -0,0 +1,69 @@
+package io.imulab.review.java.sort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of shell sort with each of the gap sequences, sequential and with the large gaps h-sorted in parallel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ShellSortBenchmark {
+
+    @Param({"THREE_PLUS_ONE", "POWER_OF_TWO_MINUS_ONE", "SEDGEWICK_1985", "CIURA", "TOKUDA"})
+    String sequence;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    @Param({"100", "10000", "1000000", "100000000"})
+    int size;
+
+    @Param
+    Distribution distribution;
+
+    private Shell.Sequence gaps;
+    private Integer[] source;
+    private Integer[] work;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (sequence) {
+            case "THREE_PLUS_ONE":
+                gaps = new Shell.ThreePlusOne();
+                break;
+            case "POWER_OF_TWO_MINUS_ONE":
+                gaps = new Shell.PowerOfTwoMinusOne();
+                break;
+            case "SEDGEWICK_1985":
+                gaps = new Shell.Sedgewick1985();
+                break;
+            case "CIURA":
+                gaps = new Shell.Ciura();
+                break;
+            case "TOKUDA":
+                gaps = new Shell.Tokuda();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown sequence " + sequence);
+        }
+
+        source = distribution.integers(size);
+        work = new Integer[size];
+    }
+
+    @Benchmark
+    public Integer[] sort() {
+        System.arraycopy(source, 0, work, 0, size);
+        if (parallel)
+            Shell.parallelSort(work, gaps);
+        else
+            Shell.sort(work, gaps);
+        return work;
+    }
+}
@@ -0,0 +1,46 @@
+package io.imulab.review.java.sort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the O(NlgN) comparison sorts on boxed integers, for every input distribution.
+ *
+ * The larger sizes need a large heap: 1e8 boxed integers, the copy being sorted and the aux array of merge sort take
+ * about 6GB. Narrow the run down with JMH options, e.g. -Pjmh.args="SortBenchmark -p size=100,10000".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class SortBenchmark {
+
+    @Param({"QUICK", "QUICK_THREE_WAY", "MERGE", "MERGE_BOTTOM_UP", "MERGE_PARALLEL", "SAMPLE_PARALLEL", "NATURAL_MERGE",
+            "HEAP", "HEAP_QUATERNARY", "SORTS"})
+    Algorithm algorithm;
+
+    @Param({"100", "10000", "1000000", "100000000"})
+    int size;
+
+    @Param
+    Distribution distribution;
+
+    private Integer[] source;
+    private Integer[] work;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = distribution.integers(size);
+        work = new Integer[size];
+    }
+
+    @Benchmark
+    public Integer[] sort() {
+        System.arraycopy(source, 0, work, 0, size);
+        algorithm.sort(work);
+        return work;
+    }
+}
@@ -0,0 +1,422 @@
+package io.imulab.review.java.graph;
+
+import java.util.*;
+
+/**
+ * An immutable graph in compressed sparse row form.
+ *
+ * Vertices are interned to the ints 0..V-1, in their natural order, so that {@link #all()} keeps the order of the
+ * mutable graphs. The out edges of vertex v are the ints targets[offsets[v], offsets[v+1]), sorted and without
+ * duplicates. That is 4 bytes an edge, and 4 bytes a vertex plus the table mapping vertices to their ints, against
+ * a hash set entry an edge for {@link Graphs#directional()}.
+ *
+ * The algorithms walk the int side of the graph: {@link #V()}, {@link #begin(int)}, {@link #end(int)} and
+ * {@link #target(int)}, which allocate nothing and box nothing. An undirected graph holds each edge in both
+ * directions, as {@link Graphs#undirectional()} does.
+ *
+ * @param <V>   type of vertex
+ */
+public class CSRGraph<V extends Comparable<V>> implements Graph<V> {
+
+    private final V source;
+
+    /**
+     * Vertices by their int, sorted.
+     */
+    private final V[] vertices;
+
+    /**
+     * Open addressing table of vertex int + 1, by vertex hash, 0 for empty slots. Its size is a power of two.
+     */
+    private final int[] index;
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final int edges;
+
+    private final List<V> all;
+
+    private CSRGraph(V source, V[] vertices, int[] index, int[] offsets, int[] targets, int edges) {
+        this.source = source;
+        this.vertices = vertices;
+        this.index = index;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.edges = edges;
+        this.all = Collections.unmodifiableList(Arrays.asList(vertices));
+    }
+
+    /**
+     * Copy a graph, directed or not.
+     *
+     * @param graph the graph to copy, a {@link CSRGraph} is returned as is.
+     * @param <V>   type of vertex
+     * @return      an immutable copy of the graph.
+     */
+    public static <V extends Comparable<V>> CSRGraph<V> of(Graph<V> graph) {
+        if (graph instanceof CSRGraph)
+            return (CSRGraph<V>) graph;
+
+        List<V> all = new ArrayList<>();
+        graph.all().forEach(all::add);
+        V[] vertices = sortedVertices(all);
+        int[] index = index(vertices);
+
+        int[] offsets = new int[vertices.length + 1];
+        int[] targets = new int[Math.max(graph.E(), 16)];
+        int e = 0;
+        for (int v = 0; v < vertices.length; v++) {
+            for (V w : graph.adj(vertices[v])) {
+                if (e == targets.length)
+                    targets = Arrays.copyOf(targets, grow(targets.length));
+                targets[e++] = checkedIndexOf(vertices, index, w);
+            }
+            offsets[v + 1] = e;
+        }
+
+        targets = sortAndDedupe(offsets, targets);
+        int edges = edges(offsets, targets, Graphs.isDirected(graph));
+        return new CSRGraph<>(graph.source(), vertices, index, offsets, targets, edges);
+    }
+
+    /**
+     * @return  a builder of a directed graph, for graphs coming as a stream of edges.
+     */
+    public static <V extends Comparable<V>> Builder<V> directed() {
+        return new Builder<>(true);
+    }
+
+    /**
+     * @return  a builder of an undirected graph, for graphs coming as a stream of edges.
+     */
+    public static <V extends Comparable<V>> Builder<V> undirected() {
+        return new Builder<>(false);
+    }
+
+    @Override
+    public V source() {
+        return source;
+    }
+
+    /**
+     * Not supported, the graph is immutable.
+     */
+    @Override
+    public void addEdge(V source, V dest) {
+        throw new UnsupportedOperationException("CSRGraph is immutable");
+    }
+
+    @Override
+    public Iterable<V> adj(V vertex) {
+        int v = indexOf(vertex);
+        if (v < 0)
+            return Collections.emptyList();
+
+        int from = offsets[v], to = offsets[v + 1];
+        return () -> new Iterator<V>() {
+            int e = from;
+
+            @Override
+            public boolean hasNext() {
+                return e < to;
+            }
+
+            @Override
+            public V next() {
+                if (e >= to)
+                    throw new NoSuchElementException();
+                return vertices[targets[e++]];
+            }
+        };
+    }
+
+    @Override
+    public int E() {
+        return edges;
+    }
+
+    @Override
+    public Iterable<V> all() {
+        return all;
+    }
+
+    /**
+     * The transpose, which shares the vertex table with this graph. An undirected graph is its own transpose, but it
+     * is copied all the same.
+     */
+    @Override
+    public CSRGraph<V> reversed() {
+        int n = vertices.length;
+        int[] reversedOffsets = new int[n + 1];
+        for (int e = 0; e < targets.length; e++)
+            reversedOffsets[targets[e] + 1]++;
+        for (int v = 0; v < n; v++)
+            reversedOffsets[v + 1] += reversedOffsets[v];
+
+        // sources are visited in increasing order, so each new adjacency comes out sorted
+        int[] next = Arrays.copyOf(reversedOffsets, n);
+        int[] reversedTargets = new int[targets.length];
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++)
+                reversedTargets[next[targets[e]]++] = v;
+        }
+
+        return new CSRGraph<>(source, vertices, index, reversedOffsets, reversedTargets, edges);
+    }
+
+    /**
+     * @return  the number of vertices.
+     */
+    public int V() {
+        return vertices.length;
+    }
+
+    /**
+     * @return  the int of the vertex, or -1 if it is not in the graph.
+     */
+    public int indexOf(V vertex) {
+        return indexOf(vertices, index, vertex);
+    }
+
+    /**
+     * @return  the vertex of the int.
+     */
+    public V vertex(int v) {
+        return vertices[v];
+    }
+
+    /**
+     * @return  the first out edge of vertex v.
+     */
+    public int begin(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @return  one past the last out edge of vertex v.
+     */
+    public int end(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @return  the vertex edge e goes to.
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * @return  a view of ids[from, to) as vertices.
+     */
+    List<V> vertices(int[] ids, int from, int to) {
+        return new AbstractList<V>() {
+            @Override
+            public V get(int i) {
+                if (i < 0 || i >= to - from)
+                    throw new IndexOutOfBoundsException("index " + i + " out of bounds for length " + (to - from));
+                return vertices[ids[from + i]];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    /**
+     * Collects edges, then lays them out in one go. Vertices are interned through a hash map while building, which
+     * is dropped by {@link #build()}.
+     */
+    public static final class Builder<V extends Comparable<V>> {
+
+        private final boolean directed;
+        private final Map<V, Integer> ids = new HashMap<>();
+        private final List<V> vertices = new ArrayList<>();
+        private V source;
+
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private int size;
+
+        private Builder(boolean directed) {
+            this.directed = directed;
+        }
+
+        /**
+         * Add an edge. The source of the first edge is the source of the graph. Duplicate edges are dropped by
+         * {@link #build()}.
+         */
+        public Builder<V> addEdge(V source, V dest) {
+            if (this.source == null)
+                this.source = source;
+
+            if (size == from.length) {
+                from = Arrays.copyOf(from, grow(size));
+                to = Arrays.copyOf(to, grow(size));
+            }
+            from[size] = intern(source);
+            to[size] = intern(dest);
+            size++;
+            return this;
+        }
+
+        /**
+         * Add a vertex, which may have no edges.
+         */
+        public Builder<V> addVertex(V vertex) {
+            intern(vertex);
+            return this;
+        }
+
+        public CSRGraph<V> build() {
+            V[] sorted = sortedVertices(vertices);
+
+            // the ints handed out while building, to the ints of the sorted vertices
+            int[] rename = new int[sorted.length];
+            for (int v = 0; v < sorted.length; v++)
+                rename[ids.get(sorted[v])] = v;
+
+            return layout(source, sorted, from, to, size, rename, directed);
+        }
+
+        private int intern(V vertex) {
+            Integer id = ids.get(Objects.requireNonNull(vertex));
+            if (id == null) {
+                id = vertices.size();
+                ids.put(vertex, id);
+                vertices.add(vertex);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Lay out the edges from[i] -> to[i], for i in [0, size), in compressed rows.
+     *
+     * @param vertices  the vertices, sorted
+     * @param rename    maps the ints in from and to to the ints of the vertices, or null if they are those already.
+     * @param directed  if false, each edge is laid out in both directions.
+     */
+    static <V extends Comparable<V>> CSRGraph<V> layout(V source, V[] vertices, int[] from, int[] to, int size,
+                                                        int[] rename, boolean directed) {
+        int n = vertices.length;
+
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[renamed(rename, from[i]) + 1]++;
+            if (!directed)
+                offsets[renamed(rename, to[i]) + 1]++;
+        }
+        for (int v = 0; v < n; v++)
+            offsets[v + 1] += offsets[v];
+
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[offsets[n]];
+        for (int i = 0; i < size; i++) {
+            int v = renamed(rename, from[i]), w = renamed(rename, to[i]);
+            targets[next[v]++] = w;
+            if (!directed)
+                targets[next[w]++] = v;
+        }
+
+        targets = sortAndDedupe(offsets, targets);
+        return new CSRGraph<>(source, vertices, index(vertices), offsets, targets, edges(offsets, targets, directed));
+    }
+
+    /**
+     * @return  the number of edges laid out in the sorted and deduplicated targets.
+     */
+    private static int edges(int[] offsets, int[] targets, boolean directed) {
+        if (directed)
+            return targets.length;
+
+        // self loops are held once, every other edge twice
+        int loops = 0;
+        for (int v = 0; v < offsets.length - 1; v++) {
+            if (Arrays.binarySearch(targets, offsets[v], offsets[v + 1], v) >= 0)
+                loops++;
+        }
+        return (targets.length + loops) / 2;
+    }
+
+    private static int renamed(int[] rename, int v) {
+        return (rename == null) ? v : rename[v];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V extends Comparable<V>> V[] sortedVertices(List<V> vertices) {
+        V[] sorted = vertices.toArray((V[]) new Comparable[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static <V> int[] index(V[] vertices) {
+        int size = Integer.highestOneBit(Math.max(vertices.length, 1) * 2 - 1) << 1;
+        int[] index = new int[size];
+        for (int v = 0; v < vertices.length; v++) {
+            int slot = hash(vertices[v]) & (size - 1);
+            while (index[slot] != 0)
+                slot = (slot + 1) & (size - 1);
+            index[slot] = v + 1;
+        }
+        return index;
+    }
+
+    private static <V> int indexOf(V[] vertices, int[] index, V vertex) {
+        if (vertex == null)
+            return -1;
+
+        int mask = index.length - 1;
+        for (int slot = hash(vertex) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int v = index[slot] - 1;
+            if (vertices[v].equals(vertex))
+                return v;
+        }
+        return -1;
+    }
+
+    private static <V> int checkedIndexOf(V[] vertices, int[] index, V vertex) {
+        int v = indexOf(vertices, index, vertex);
+        if (v < 0)
+            throw new IllegalArgumentException("adjacent vertex " + vertex + " is not in the graph");
+        return v;
+    }
+
+    private static int hash(Object vertex) {
+        int h = vertex.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Sort each adjacency and drop duplicate edges, moving the adjacencies down over the gaps.
+     *
+     * @return  the targets, trimmed to the edges left.
+     */
+    private static int[] sortAndDedupe(int[] offsets, int[] targets) {
+        int e = 0;
+        for (int v = 0, from = offsets[0]; v < offsets.length - 1; v++) {
+            int to = offsets[v + 1];
+            Arrays.sort(targets, from, to);
+
+            offsets[v] = e;
+            for (int i = from; i < to; i++) {
+                if (i == from || targets[i] != targets[i - 1])
+                    targets[e++] = targets[i];
+            }
+            from = to;
+        }
+        offsets[offsets.length - 1] = e;
+
+        return (e == targets.length) ? targets : Arrays.copyOf(targets, e);
+    }
+
+    private static int grow(int size) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, size + (long) (size >> 1) + 1);
+    }
+}
@@ -2,108 +2,226 @@ package io.imulab.review.java.graph;
 
 import java.util.*;
 
+/**
+ * Depth first search of the whole graph, on the ints of a {@link CSRGraph}.
+ *
+ * The search keeps its own stack of vertices and of the next edge to follow from each, so a path as long as the graph
+ * does not overflow the call stack. Marks are a bitset, and the orders and trace are int arrays indexed by vertex.
+ */
 public class DepthFirstSearch<V extends Comparable<V>> {
 
+    private final CSRGraph<V> graph;
+
     /**
-     * An array keeping track of which vertices have been visited.
+     * A bitset keeping track of which vertices have been visited.
      */
-    private final Map<V, Boolean> marked;
+    private final long[] marked;
 
     /**
-     * A map keeping track of the trace of the search. If there is an entry of k -> v, then we got to k from v.
+     * The trace of the search. If edgeTo[w] is v, then we got to w from v. -1 for the roots.
      */
-    private final Map<V, V> trace;
+    private final int[] edgeTo;
 
     /**
-     * A map maintaining relation of vertex to an integer indicating the group id this vertex is in. If vertices
-     * have the same componentId, they are in the same group.
+     * The group id of each vertex. If vertices have the same componentId, they were reached from the same root. -1
+     * for vertices not reached from any root.
      */
-    private final Map<V, Integer> componentId;
+    private final int[] componentId;
+    private int components;
 
     /**
      * Vertices in pre-order
      */
-    private final Queue<V> pre;
+    private final int[] pre;
+    private int preCount;
 
     /**
-     * Vertices in post order;
+     * Vertices in post order. Read backwards, it is the reversed post order.
      */
-    private final Queue<V> post;
+    private final int[] post;
+    private int postCount;
 
     /**
-     * Vertices in reversed post order;
+     * Vertices in reversed post order, made on first use.
      */
-    private final Stack<V> reversePost;
+    private int[] reversePost;
+
+    private Map<V, Integer> componentIdMap;
+
+    /**
+     * The explicit call stack: a vertex, and the next of its edges to follow.
+     */
+    private final int[] stack;
+    private final int[] next;
 
     public DepthFirstSearch(Graph<V> graph) {
-        pre = new LinkedList<>();
-        post = new LinkedList<>();
-        reversePost = new Stack<>();
-        marked = new HashMap<>();
-        trace = new LinkedHashMap<>();
-        componentId = new HashMap<>();
-
-        int c = 0;
-        Stack<V> callStack = new Stack<>();
-        for (V v : graph.all()) {
-            if (!isMarked(v)) {
-                dfs(graph, v, c++, callStack);
+        this(CSRGraph.of(graph));
+    }
+
+    public DepthFirstSearch(CSRGraph<V> graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Search from the roots in the given order, such as the reversed post order of the reversed graph.
+     *
+     * @param graph the graph to search
+     * @param roots the ints of the vertices to start new searches from, in order, or null for all of them in order.
+     */
+    public DepthFirstSearch(CSRGraph<V> graph, int[] roots) {
+        int n = graph.V();
+        this.graph = graph;
+        this.marked = new long[(n + 63) >>> 6];
+        this.edgeTo = new int[n];
+        this.componentId = new int[n];
+        this.pre = new int[n];
+        this.post = new int[n];
+        this.stack = new int[n];
+        this.next = new int[n];
+
+        Arrays.fill(edgeTo, -1);
+        Arrays.fill(componentId, -1);
+        if (roots == null) {
+            for (int v = 0; v < n; v++) {
+                if (!isMarked(v))
+                    dfs(v, components++);
+            }
+        } else {
+            for (int v : roots) {
+                if (!isMarked(v))
+                    dfs(v, components++);
             }
         }
     }
 
-    private void dfs(Graph<V> g, V v, int c, Stack<V> callStack) {
-        callStack.push(v);
+    private void dfs(int root, int c) {
+        int top = 0;
+        stack[0] = root;
+        next[0] = graph.begin(root);
+        visit(root, c);
+
+        while (top >= 0) {
+            int v = stack[top];
+            int e = next[top], end = graph.end(v);
 
-        pre.offer(v);
-        marked.put(v, Boolean.TRUE);
-        componentId.put(v, c);
+            while (e < end && isMarked(graph.target(e)))
+                e++;
 
-        for (V w : g.adj(v)) {
-            if (!isMarked(w)) {
-                trace.putIfAbsent(w, v);
-                dfs(g, w, c, callStack);
+            if (e == end) {
+                post[postCount++] = v;
+                top--;
+                continue;
             }
+
+            int w = graph.target(e);
+            next[top] = e + 1;
+            edgeTo[w] = v;
+            visit(w, c);
+
+            top++;
+            stack[top] = w;
+            next[top] = graph.begin(w);
         }
+    }
 
-        post.offer(v);
-        reversePost.push(v);
+    private void visit(int v, int c) {
+        marked[v >>> 6] |= 1L << v;
+        componentId[v] = c;
+        pre[preCount++] = v;
+    }
 
-        callStack.pop();
+    private boolean isMarked(int v) {
+        return (marked[v >>> 6] & (1L << v)) != 0;
     }
 
-    private boolean isMarked(V vertex) {
-        return marked.getOrDefault(vertex, Boolean.FALSE);
+    public CSRGraph<V> graph() {
+        return graph;
     }
 
     public Iterable<V> getPre() {
-        return pre;
+        return graph.vertices(pre, 0, preCount);
     }
 
     public Iterable<V> getPost() {
-        return post;
+        return graph.vertices(post, 0, postCount);
     }
 
     public Iterable<V> getReversePost() {
-        Queue<V> q = new LinkedList<>();
-        //noinspection unchecked
-        Stack<V> s = (Stack<V>) reversePost.clone();
+        return graph.vertices(getReversePostOrder(), 0, postCount);
+    }
 
-        while (!s.isEmpty())
-            q.offer(s.pop());
+    /**
+     * @return  the ints of the vertices in pre-order. Not to be modified.
+     */
+    public int[] getPreOrder() {
+        return pre;
+    }
 
-        return q;
+    /**
+     * @return  the ints of the vertices in post order. Not to be modified.
+     */
+    public int[] getPostOrder() {
+        return post;
+    }
+
+    /**
+     * @return  the ints of the vertices in reversed post order. Not to be modified.
+     */
+    public int[] getReversePostOrder() {
+        if (reversePost == null) {
+            int[] r = new int[postCount];
+            for (int i = 0; i < postCount; i++)
+                r[i] = post[postCount - 1 - i];
+            reversePost = r;
+        }
+        return reversePost;
+    }
+
+    /**
+     * @return  the int of the vertex v was reached from, or -1 if it is a root.
+     */
+    public int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /**
+     * @return  the search that reached vertex v, or -1 if none did.
+     */
+    public int componentId(int v) {
+        return componentId[v];
+    }
+
+    /**
+     * @return  the number of searches it took to visit the graph.
+     */
+    public int components() {
+        return components;
     }
 
+    /**
+     * @return  the search that reached each vertex, leaving out the vertices none did.
+     */
     public Map<V, Integer> getComponentId() {
-        return componentId;
+        if (componentIdMap == null) {
+            Map<V, Integer> map = new LinkedHashMap<>();
+            for (int v = 0; v < graph.V(); v++) {
+                if (componentId[v] >= 0)
+                    map.put(graph.vertex(v), componentId[v]);
+            }
+            componentIdMap = Collections.unmodifiableMap(map);
+        }
+        return componentIdMap;
     }
 
     public void debug() {
         StringBuilder sb = new StringBuilder();
 
         sb.append("Trace:\n");
-        trace.forEach((w, v) -> sb.append("\t").append(v.toString()).append(" -> ").append(w.toString()).append("\n"));
+        for (int i = 0; i < preCount; i++) {
+            int w = pre[i];
+            if (edgeTo[w] >= 0)
+                sb.append("\t").append(graph.vertex(edgeTo[w])).append(" -> ").append(graph.vertex(w)).append("\n");
+        }
 
         sb.append("Pre Order:\n");
         sb.append("\t");
@@ -1,59 +1,107 @@
 package io.imulab.review.java.graph;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.Collections;
 
+/**
+ * Finds a directed cycle, if there is one, with one depth first search in O(V+E).
+ *
+ * The search runs on the ints of a {@link CSRGraph}, with an explicit stack, so deep graphs do not overflow the call
+ * stack. A bitset of the vertices on the stack tells back edges apart in constant time. For a graph that gets edges
+ * one at a time, {@link PearceKellyDAG} finds the cycle an edge would close without searching the whole graph again.
+ */
 public class DirectedCycle<V extends Comparable<V>> {
 
-    private final Map<V, Boolean> marked;
-    private final Map<V, V> edgeTo;
-    private final Stack<V> cycle;
-    private final Stack<V> callStack;
+    private final CSRGraph<V> graph;
+    private final long[] marked;
+    private final long[] onStack;
+    private final int[] stack;
+    private final int[] next;
+
+    /**
+     * The cycle found, in edge order, starting and ending with the same vertex. Empty if there is none.
+     */
+    private int[] cycle = new int[0];
 
     public DirectedCycle(Graph<V> graph) {
-        marked = new LinkedHashMap<>();
-        edgeTo = new LinkedHashMap<>();
-        cycle = new Stack<>();
-        callStack = new Stack<>();
-
-        for (V v : graph.all()) {
-            if (!isMarked(v))
-                dfs(graph, v);
+        this(CSRGraph.of(graph));
+    }
+
+    public DirectedCycle(CSRGraph<V> graph) {
+        int n = graph.V();
+        this.graph = graph;
+        this.marked = new long[(n + 63) >>> 6];
+        this.onStack = new long[(n + 63) >>> 6];
+        this.stack = new int[n];
+        this.next = new int[n];
+
+        for (int v = 0; v < n && !hasCycle(); v++) {
+            if (!isSet(marked, v))
+                dfs(v);
         }
     }
 
-    private void dfs(Graph<V> graph, V v) {
-        callStack.push(v);
-        marked.put(v, true);
+    private void dfs(int root) {
+        int top = 0;
+        stack[0] = root;
+        next[0] = graph.begin(root);
+        set(marked, root);
+        set(onStack, root);
+
+        while (top >= 0) {
+            int v = stack[top];
+            int e = next[top], end = graph.end(v);
+
+            if (e == end) {
+                clear(onStack, v);
+                top--;
+                continue;
+            }
 
-        for (V w : graph.adj(v)) {
-            if (hasCycle())
+            int w = graph.target(e);
+            next[top] = e + 1;
+
+            if (isSet(onStack, w)) {
+                // the stack from w up to v is a path, and v -> w closes it
+                int from = top;
+                while (stack[from] != w)
+                    from--;
+                cycle = Arrays.copyOfRange(stack, from, top + 2);
+                cycle[cycle.length - 1] = w;
                 return;
-            else if (!isMarked(w)) {
-                edgeTo.put(w, v);
-                dfs(graph, w);
-            } else if (callStack.contains(w)) {
-                for (V x = v; x != null && !x.equals(w); x = edgeTo.get(x))
-                    cycle.push(x);
-                cycle.push(w);
-                cycle.push(v);
+            }
+
+            if (!isSet(marked, w)) {
+                set(marked, w);
+                set(onStack, w);
+                top++;
+                stack[top] = w;
+                next[top] = graph.begin(w);
             }
         }
+    }
+
+    private static boolean isSet(long[] bits, int v) {
+        return (bits[v >>> 6] & (1L << v)) != 0;
+    }
 
-        callStack.pop();
+    private static void set(long[] bits, int v) {
+        bits[v >>> 6] |= 1L << v;
     }
 
-    private boolean isMarked(V vertex) {
-        return marked.getOrDefault(vertex, Boolean.FALSE);
+    private static void clear(long[] bits, int v) {
+        bits[v >>> 6] &= ~(1L << v);
     }
 
     public boolean hasCycle() {
-        return !cycle.isEmpty();
+        return cycle.length > 0;
     }
 
+    /**
+     * @return  the vertices of the cycle, in edge order, starting and ending with the same vertex.
+     */
     public Iterable<V> getCycle() {
-        return cycle;
+        return hasCycle() ? graph.vertices(cycle, 0, cycle.length) : Collections.emptyList();
     }
 
     public void reportCycle() {
@@ -62,7 +110,10 @@ public class DirectedCycle<V extends Comparable<V>> {
 
         StringBuilder sb = new StringBuilder();
         sb.append("Cycle detected!\n");
-        sb.append("\t").append(getCycle().toString()).append("\n");
+        sb.append("\t[");
+        getCycle().forEach(v -> sb.append(v).append(", "));
+        sb.setLength(sb.length() - 2);
+        sb.append("]\n");
 
         System.out.println(sb);
     }
@@ -0,0 +1,265 @@
+package io.imulab.review.java.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strongly connected components on the fork/join pool: forward-backward (Fleischer, Hendrickson and Pinar, 2000),
+ * after trimming (McLendon et al., 2005).
+ *
+ * Trimming first takes out the vertices with no edge in or no edge out among those left, each of which is a component
+ * of its own; in most real graphs, that is most of them. Then, for a set of vertices, the vertices reached forward
+ * from a pivot and those reached backward from it share the pivot's component. Every other component lies wholly in
+ * one of the three other sets: reached forward only, backward only, or neither. Those are solved in parallel. Sets
+ * are told apart by giving each its own color, searches only following edges within their color. Sets of at most the
+ * threshold, and sets a pivot barely shrinks, are solved with {@link TarjanSCC}'s search instead.
+ *
+ * Needs the reversed graph for the backward searches. Component ids depend on how the tasks were scheduled, and are in
+ * no particular order.
+ */
+public class ForwardBackwardSCC<V extends Comparable<V>> extends SCC<V> {
+
+    /**
+     * Sets of at most this many vertices are solved sequentially.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    /**
+     * A round that leaves all but less than 1/PEEL_RATIO of its set in one part hands that part to {@link TarjanSCC}.
+     */
+    static final int PEEL_RATIO = 8;
+
+    private final CSRGraph<V> reversed;
+
+    /**
+     * The set each vertex is in.
+     */
+    private final int[] color;
+    private final AtomicInteger colors = new AtomicInteger(1);
+    private final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * For the sequential search of small sets, indexed by vertex.
+     */
+    private final int[] number, low;
+
+    private final int threshold;
+
+    public ForwardBackwardSCC(Graph<V> graph) {
+        this(CSRGraph.of(graph), PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param graph     the graph
+     * @param threshold sets of at most this many vertices are solved sequentially
+     * @param pool      the pool to run the tasks on
+     */
+    public ForwardBackwardSCC(CSRGraph<V> graph, int threshold, ForkJoinPool pool) {
+        super(graph);
+        assert threshold > 0;
+
+        int n = graph.V();
+        this.threshold = threshold;
+        this.reversed = graph.reversed();
+        this.color = new int[n];
+        this.number = new int[n];
+        this.low = new int[n];
+
+        Arrays.fill(id, -1);
+        int[] left = trim();
+        if (left.length > 0)
+            pool.invoke(new ForwardBackwardTask(left, 0, left.length, 0));
+        count = ids.get();
+    }
+
+    /**
+     * Take out the vertices with no edge in or out, again and again, each as its own component.
+     *
+     * @return  the vertices left.
+     */
+    private int[] trim() {
+        int n = graph.V();
+        int[] in = new int[n], out = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.begin(v); e < graph.end(v); e++) {
+                int w = graph.target(e);
+                if (w != v) {
+                    out[v]++;
+                    in[w]++;
+                }
+            }
+        }
+
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (in[v] == 0 || out[v] == 0) {
+                id[v] = ids.getAndIncrement();
+                queue[tail++] = v;
+            }
+        }
+
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = graph.begin(v); e < graph.end(v); e++) {
+                int w = graph.target(e);
+                if (id[w] < 0 && --in[w] == 0) {
+                    id[w] = ids.getAndIncrement();
+                    queue[tail++] = w;
+                }
+            }
+            for (int e = reversed.begin(v); e < reversed.end(v); e++) {
+                int w = reversed.target(e);
+                if (id[w] < 0 && --out[w] == 0) {
+                    id[w] = ids.getAndIncrement();
+                    queue[tail++] = w;
+                }
+            }
+        }
+
+        int[] left = new int[n - tail];
+        for (int v = 0, i = 0; v < n; v++) {
+            if (id[v] < 0)
+                left[i++] = v;
+        }
+        return left;
+    }
+
+    /**
+     * Solves the vertices set[lo, hi), all of them of the same color.
+     *
+     * Each round peels off the pivot's component and splits what is left of the set in three parts in place. The task
+     * goes on with the largest part and forks each of the others that is above the threshold, so tasks nest at most
+     * lgV deep. Parts of at most the threshold are solved with {@link TarjanSCC} on the spot, and so is the largest
+     * part if it holds all but less than 1/{@link #PEEL_RATIO} of the set: on a chain of cycles, rounds would
+     * otherwise peel off one cycle each, for O(V^2) work.
+     */
+    private final class ForwardBackwardTask extends RecursiveAction {
+
+        private final int[] set;
+        private final int lo, hi, c;
+
+        ForwardBackwardTask(int[] set, int lo, int hi, int c) {
+            this.set = set;
+            this.lo = lo;
+            this.hi = hi;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            List<ForwardBackwardTask> forked = new ArrayList<>();
+            int lo = this.lo, hi = this.hi, c = this.c;
+            int[] queue = null;
+
+            while (hi - lo > threshold) {
+                if (queue == null)
+                    queue = new int[hi - lo];
+
+                int forward = colors.getAndIncrement(), backward = colors.getAndIncrement();
+                peel(set[lo], c, forward, backward, queue);
+
+                // drop the component, then order the rest: forward only, backward only, neither
+                int n = hi - lo, size = lo;
+                for (int i = lo; i < hi; i++) {
+                    if (id[set[i]] < 0)
+                        set[size++] = set[i];
+                }
+                int lt = lo, i = lo, gt = size;
+                while (i < gt) {
+                    int v = set[i];
+                    if (color[v] == forward)
+                        swap(set, lt++, i++);
+                    else if (color[v] == backward)
+                        i++;
+                    else
+                        swap(set, i, --gt);
+                }
+
+                int[] from = {lo, lt, gt}, to = {lt, gt, size}, of = {forward, backward, c};
+                int largest = 0;
+                for (int p = 1; p < 3; p++) {
+                    if (to[p] - from[p] > to[largest] - from[largest])
+                        largest = p;
+                }
+
+                for (int p = 0; p < 3; p++) {
+                    if (p == largest || from[p] == to[p])
+                        continue;
+                    if (to[p] - from[p] > threshold) {
+                        ForwardBackwardTask task = new ForwardBackwardTask(set, from[p], to[p], of[p]);
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        TarjanSCC.components(graph, set, from[p], to[p], color, of[p], id, ids, number, low);
+                    }
+                }
+
+                lo = from[largest];
+                hi = to[largest];
+                c = of[largest];
+                if (hi - lo > n - n / PEEL_RATIO)
+                    break;
+            }
+
+            if (lo < hi)
+                TarjanSCC.components(graph, set, lo, hi, color, c, id, ids, number, low);
+            for (ForwardBackwardTask task : forked)
+                task.join();
+        }
+
+        /**
+         * Give the component of the pivot its id, and recolor the vertices of color c it reaches forward only or
+         * backward only.
+         */
+        private void peel(int pivot, int c, int forward, int backward, int[] queue) {
+            // forward: recolor what the pivot reaches
+            color[pivot] = forward;
+            int head = 0, tail = 0;
+            queue[tail++] = pivot;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = graph.begin(v); e < graph.end(v); e++) {
+                    int w = graph.target(e);
+                    if (color[w] == c && id[w] < 0) {
+                        color[w] = forward;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+
+            // backward: what was reached forward is in the pivot's component, the rest is recolored
+            int component = ids.getAndIncrement();
+            id[pivot] = component;
+            head = 0;
+            tail = 0;
+            queue[tail++] = pivot;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = reversed.begin(v); e < reversed.end(v); e++) {
+                    int w = reversed.target(e);
+                    if (id[w] >= 0)
+                        continue;
+
+                    if (color[w] == forward) {
+                        id[w] = component;
+                        queue[tail++] = w;
+                    } else if (color[w] == c) {
+                        color[w] = backward;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
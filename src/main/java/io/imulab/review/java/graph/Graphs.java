@@ -29,6 +29,14 @@ public class Graphs {
         System.out.println(sb.toString());
     }
 
+    /**
+     * @return  whether each adjacency of the graph is an edge of its own, rather than one direction of an undirected
+     *          edge. Of the graphs here, only those of {@link #undirectional()} are undirected.
+     */
+    static boolean isDirected(Graph<?> graph) {
+        return !(graph instanceof UnDiGraph) || graph instanceof DiGraph;
+    }
+
     private static class UnDiGraph<V extends Comparable<V>> implements Graph<V> {
 
         final Map<V, Set<V>> graph;
@@ -62,10 +70,10 @@ public class Graphs {
 
         @Override
         public Iterable<V> all() {
-            Set<V> all = new TreeSet<>();
+            Set<V> all = new HashSet<>();
             for (Set<V> e : graph.values())
                 all.addAll(e);
-            return Collections.unmodifiableSet(all);
+            return sorted(all);
         }
 
         @Override
@@ -92,6 +100,15 @@ public class Graphs {
         void ensureVertex(V vertex) {
             this.graph.putIfAbsent(vertex, new HashSet<>());
         }
+
+        /**
+         * Sorting once is much cheaper than a TreeSet insert per edge.
+         */
+        static <V extends Comparable<V>> List<V> sorted(Set<V> vertices) {
+            List<V> all = new ArrayList<>(vertices);
+            Collections.sort(all);
+            return Collections.unmodifiableList(all);
+        }
     }
 
     private static class DiGraph<V extends Comparable<V>> extends UnDiGraph<V> {
@@ -108,12 +125,10 @@ public class Graphs {
 
         @Override
         public Iterable<V> all() {
-            Set<V> all = new TreeSet<>();
-            graph.forEach((key, value) -> {
-                all.add(key);
-                all.addAll(value);
-            });
-            return Collections.unmodifiableSet(all);
+            Set<V> all = new HashSet<>(graph.keySet());
+            for (Set<V> e : graph.values())
+                all.addAll(e);
+            return sorted(all);
         }
 
         @Override
@@ -1,55 +1,25 @@
 package io.imulab.review.java.graph;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-
-public class KosarajuSharirSCC<V extends Comparable<V>> {
-
-    private final Map<V, Boolean> marked;
-    private final Map<V, Integer> id;
+/**
+ * Two searches: one of the reversed graph for its reversed post order, then one of the graph taking roots in that
+ * order, each of which reaches exactly one component. {@link TarjanSCC} does it in one search without the reversed
+ * copy.
+ *
+ * Components are numbered sinks first, in reversed topological order of the condensation.
+ */
+public class KosarajuSharirSCC<V extends Comparable<V>> extends SCC<V> {
 
     public KosarajuSharirSCC(final Graph<V> graph) {
-        this.id = new LinkedHashMap<>();
-        this.marked = new LinkedHashMap<>();
-
-        DepthFirstSearch<V> dfs = new DepthFirstSearch<>(graph.reversed());
-        int c = 0;
-        System.out.println("topological order on reversed graph: " + dfs.getReversePost());
-        for (V v : dfs.getReversePost()) {
-            if (!isMarked(v)) {
-                dfs(graph, v, c++);
-            }
-
-        }
-    }
-
-    private void dfs(Graph<V> graph, V v, int c) {
-        marked.put(v, true);
-        id.put(v, c);
-
-        for (V w : graph.adj(v)) {
-            if (!isMarked(w))
-                dfs(graph, w, c);
-        }
-    }
-
-    private boolean isMarked(V vertex) {
-        return marked.getOrDefault(vertex, Boolean.FALSE);
+        this(CSRGraph.of(graph));
     }
 
-    public boolean isStronglyConnected(V v, V w) {
-        Integer g1 = id.get(v);
-        Integer g2 = id.get(w);
-        return g1 != null && g2 != null && g1.equals(g2);
-    }
-
-    public void debug() {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("Groups:\n");
-        id.forEach((v, i) -> sb.append("\t").append(v.toString()).append(": ").append(i).append("\n"));
-        sb.append("\n");
+    public KosarajuSharirSCC(final CSRGraph<V> graph) {
+        super(graph);
 
-        System.out.println(sb.toString());
+        DepthFirstSearch<V> reversed = new DepthFirstSearch<>(graph.reversed());
+        DepthFirstSearch<V> dfs = new DepthFirstSearch<>(graph, reversed.getReversePostOrder());
+        for (int v = 0; v < graph.V(); v++)
+            id[v] = dfs.componentId(v);
+        count = dfs.components();
     }
 }
@@ -0,0 +1,358 @@
+package io.imulab.review.java.graph;
+
+import java.util.*;
+
+/**
+ * A directed acyclic graph that keeps a topological order as edges are added (Pearce and Kelly, 2006), and refuses
+ * the edges that would close a cycle.
+ *
+ * Every vertex has a position in the order. An edge x -> y with x before y changes nothing. Otherwise only the
+ * vertices positioned between y and x can be affected: a search forward from y, and one backward from x, both kept
+ * inside that window, either reach x from y, which is a cycle, or find the vertices to move. Those of the backward
+ * search are moved in front of those of the forward search, reusing the positions they held. The cost is bounded by
+ * the edges of the vertices in the window, rather than the whole graph as with running {@link DirectedCycle} again.
+ *
+ * Vertices and edges live on ints, in growable arrays; the searches use their own stacks. Not thread safe.
+ *
+ * @param <V>   type of vertex
+ */
+public class PearceKellyDAG<V extends Comparable<V>> implements Graph<V> {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<V, Integer> ids = new HashMap<>();
+    private final List<V> vertices = new ArrayList<>();
+    private V source;
+    private int edges;
+
+    /**
+     * Out and in edges of each vertex, each the first outSize[v] / inSize[v] items of the array.
+     */
+    private int[][] out = new int[16][];
+    private int[][] in = new int[16][];
+    private int[] outSize = new int[16];
+    private int[] inSize = new int[16];
+
+    /**
+     * ord[v] is the position of v in the topological order, and pos[i] the vertex at position i.
+     */
+    private int[] ord = new int[16];
+    private int[] pos = new int[16];
+
+    /**
+     * visited[v] == epoch if v was reached by the current search.
+     */
+    private int[] visited = new int[16];
+    private int epoch;
+
+    /**
+     * Search stack, of vertices and of the next of their edges to follow.
+     */
+    private int[] stack = new int[16];
+    private int[] next = new int[16];
+
+    /**
+     * Vertices reached by the forward and the backward search of the last insert.
+     */
+    private int[] forward = new int[16];
+    private int[] backward = new int[16];
+    private int forwardSize, backwardSize;
+
+    private int[] cycle = new int[0];
+
+    @Override
+    public V source() {
+        return source;
+    }
+
+    /**
+     * Add the edge, keeping the order topological.
+     *
+     * @throws IllegalArgumentException if the edge would close a cycle, which {@link #getCycle()} then holds. The
+     *                                  graph is left as it was, save for the vertices being added.
+     */
+    @Override
+    public void addEdge(V source, V dest) {
+        if (!tryAddEdge(source, dest))
+            throw new IllegalArgumentException("edge " + source + " -> " + dest + " closes a cycle: " + getCycle());
+    }
+
+    /**
+     * Add the edge if it does not close a cycle.
+     *
+     * @return  true if the edge was added or was there already, false if it would close a cycle, which
+     *          {@link #getCycle()} then holds.
+     */
+    public boolean tryAddEdge(V source, V dest) {
+        if (this.source == null)
+            this.source = source;
+
+        int x = intern(source), y = intern(dest);
+        cycle = new int[0];
+
+        if (hasEdge(x, y))
+            return true;
+
+        if (x == y) {
+            cycle = new int[]{x, x};
+            return false;
+        }
+
+        if (ord[x] > ord[y]) {
+            if (!searchForward(y, ord[x], x))
+                return false;
+            searchBackward(x, ord[y]);
+            reorder();
+        }
+
+        add(x, y);
+        return true;
+    }
+
+    public void addVertex(V vertex) {
+        intern(vertex);
+    }
+
+    /**
+     * @return  the vertices of the cycle the last refused edge would have closed, in edge order, starting and ending
+     *          with the same vertex. Empty if the last edge was added.
+     */
+    public Iterable<V> getCycle() {
+        List<V> list = new ArrayList<>(cycle.length);
+        for (int v : cycle)
+            list.add(vertices.get(v));
+        return list;
+    }
+
+    /**
+     * @return  the vertices in topological order.
+     */
+    public Iterable<V> order() {
+        List<V> list = new ArrayList<>(vertices.size());
+        for (int i = 0; i < vertices.size(); i++)
+            list.add(vertices.get(pos[i]));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return  true if u comes before v in the current topological order. A path from u to v implies it, not the
+     *          other way round.
+     */
+    public boolean isBefore(V u, V v) {
+        Integer i = ids.get(u), j = ids.get(v);
+        if (i == null || j == null)
+            throw new NoSuchElementException();
+        return ord[i] < ord[j];
+    }
+
+    @Override
+    public Iterable<V> adj(V vertex) {
+        Integer v = ids.get(vertex);
+        if (v == null)
+            return Collections.emptyList();
+
+        List<V> list = new ArrayList<>(outSize[v]);
+        for (int i = 0; i < outSize[v]; i++)
+            list.add(vertices.get(out[v][i]));
+        return list;
+    }
+
+    @Override
+    public int E() {
+        return edges;
+    }
+
+    /**
+     * @return  the vertices in topological order, as {@link #order()}.
+     */
+    @Override
+    public Iterable<V> all() {
+        return order();
+    }
+
+    @Override
+    public Graph<V> reversed() {
+        PearceKellyDAG<V> reversed = new PearceKellyDAG<>();
+        for (int i = vertices.size() - 1; i >= 0; i--)
+            reversed.intern(vertices.get(pos[i]));
+        for (int v = 0; v < vertices.size(); v++) {
+            for (int i = 0; i < outSize[v]; i++)
+                reversed.addEdge(vertices.get(out[v][i]), vertices.get(v));
+        }
+        return reversed;
+    }
+
+    /**
+     * Depth first search from y, along the vertices positioned before ub.
+     *
+     * @return  false if it reaches x, at position ub, with the path in {@link #cycle}.
+     */
+    private boolean searchForward(int y, int ub, int x) {
+        newEpoch();
+        forwardSize = 0;
+
+        int top = 0;
+        stack[0] = y;
+        next[0] = 0;
+        visited[y] = epoch;
+        forward[forwardSize++] = y;
+
+        while (top >= 0) {
+            int v = stack[top];
+            if (next[top] == outSize[v]) {
+                top--;
+                continue;
+            }
+
+            int w = out[v][next[top]++];
+            if (w == x) {
+                // x -> y, then the stack from y to v, then back to x
+                cycle = new int[top + 3];
+                cycle[0] = x;
+                System.arraycopy(stack, 0, cycle, 1, top + 1);
+                cycle[top + 2] = x;
+                return false;
+            }
+
+            if (visited[w] != epoch && ord[w] < ub) {
+                visited[w] = epoch;
+                forward[forwardSize++] = w;
+                top++;
+                stack[top] = w;
+                next[top] = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Depth first search from x, against the edges, along the vertices positioned after lb.
+     */
+    private void searchBackward(int x, int lb) {
+        newEpoch();
+        backwardSize = 0;
+
+        int top = 0;
+        stack[0] = x;
+        next[0] = 0;
+        visited[x] = epoch;
+        backward[backwardSize++] = x;
+
+        while (top >= 0) {
+            int v = stack[top];
+            if (next[top] == inSize[v]) {
+                top--;
+                continue;
+            }
+
+            int w = in[v][next[top]++];
+            if (visited[w] != epoch && ord[w] > lb) {
+                visited[w] = epoch;
+                backward[backwardSize++] = w;
+                top++;
+                stack[top] = w;
+                next[top] = 0;
+            }
+        }
+    }
+
+    /**
+     * Hand the positions held by the vertices of both searches to the backward ones first, then to the forward ones,
+     * each keeping their relative order.
+     */
+    private void reorder() {
+        // positions, sorted, then the vertices in that order
+        for (int i = 0; i < backwardSize; i++)
+            backward[i] = ord[backward[i]];
+        for (int i = 0; i < forwardSize; i++)
+            forward[i] = ord[forward[i]];
+        Arrays.sort(backward, 0, backwardSize);
+        Arrays.sort(forward, 0, forwardSize);
+
+        // the stack is free again, and as large as the vertices
+        int[] moved = stack;
+        for (int i = 0; i < backwardSize; i++)
+            moved[i] = pos[backward[i]];
+        for (int i = 0; i < forwardSize; i++)
+            moved[backwardSize + i] = pos[forward[i]];
+
+        // merge the two sorted position lists, handing them out in turn
+        int i = 0, j = 0;
+        for (int k = 0; k < backwardSize + forwardSize; k++) {
+            int p = (j == forwardSize || (i < backwardSize && backward[i] < forward[j])) ? backward[i++] : forward[j++];
+            ord[moved[k]] = p;
+            pos[p] = moved[k];
+        }
+    }
+
+    private void newEpoch() {
+        if (++epoch == 0) {
+            Arrays.fill(visited, 0);
+            epoch = 1;
+        }
+    }
+
+    private boolean hasEdge(int x, int y) {
+        if (outSize[x] <= inSize[y]) {
+            for (int i = 0; i < outSize[x]; i++) {
+                if (out[x][i] == y)
+                    return true;
+            }
+        } else {
+            for (int i = 0; i < inSize[y]; i++) {
+                if (in[y][i] == x)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(int x, int y) {
+        if (outSize[x] == out[x].length)
+            out[x] = Arrays.copyOf(out[x], grow(outSize[x]));
+        out[x][outSize[x]++] = y;
+
+        if (inSize[y] == in[y].length)
+            in[y] = Arrays.copyOf(in[y], grow(inSize[y]));
+        in[y][inSize[y]++] = x;
+
+        edges++;
+    }
+
+    /**
+     * @return  the int of the vertex, added at the end of the order if it is new.
+     */
+    private int intern(V vertex) {
+        Integer id = ids.get(Objects.requireNonNull(vertex));
+        if (id != null)
+            return id;
+
+        int v = vertices.size();
+        if (v == ord.length) {
+            int n = grow(v);
+            out = Arrays.copyOf(out, n);
+            in = Arrays.copyOf(in, n);
+            outSize = Arrays.copyOf(outSize, n);
+            inSize = Arrays.copyOf(inSize, n);
+            ord = Arrays.copyOf(ord, n);
+            pos = Arrays.copyOf(pos, n);
+            visited = Arrays.copyOf(visited, n);
+            stack = Arrays.copyOf(stack, n);
+            next = Arrays.copyOf(next, n);
+            forward = Arrays.copyOf(forward, n);
+            backward = Arrays.copyOf(backward, n);
+        }
+
+        ids.put(vertex, v);
+        vertices.add(vertex);
+        out[v] = EMPTY;
+        in[v] = EMPTY;
+        ord[v] = v;
+        pos[v] = v;
+        return v;
+    }
+
+    private static int grow(int size) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, size + (long) (size >> 1) + 2);
+    }
+}
@@ -0,0 +1,100 @@
+package io.imulab.review.java.graph;
+
+/**
+ * Strongly connected components of a directed graph, as an int component id per vertex int of a {@link CSRGraph}.
+ *
+ * The subclasses differ in how they find the components, and so in how the ids are numbered: see each of them.
+ *
+ * @param <V>   type of vertex
+ */
+public abstract class SCC<V extends Comparable<V>> {
+
+    final CSRGraph<V> graph;
+
+    /**
+     * id[v] is the component of vertex v, in [0, count).
+     */
+    final int[] id;
+    int count;
+
+    SCC(CSRGraph<V> graph) {
+        this.graph = graph;
+        this.id = new int[graph.V()];
+    }
+
+    public CSRGraph<V> graph() {
+        return graph;
+    }
+
+    /**
+     * @return  the number of components.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return  the component of each vertex int of {@link #graph()}. Not to be modified.
+     */
+    public int[] getComponentIds() {
+        return id;
+    }
+
+    /**
+     * @return  the component of the vertex, or -1 if it is not in the graph.
+     */
+    public int componentId(V vertex) {
+        int v = graph.indexOf(vertex);
+        return (v < 0) ? -1 : id[v];
+    }
+
+    public boolean isStronglyConnected(V v, V w) {
+        int g1 = componentId(v);
+        int g2 = componentId(w);
+        return g1 >= 0 && g1 == g2;
+    }
+
+    /**
+     * The condensation of the graph: a vertex per component, by its id, and an edge between two components if there
+     * is one between their vertices. It is a DAG.
+     */
+    public CSRGraph<Integer> condensation() {
+        int size = 0;
+        for (int v = 0; v < graph.V(); v++) {
+            for (int e = graph.begin(v); e < graph.end(v); e++) {
+                if (id[v] != id[graph.target(e)])
+                    size++;
+            }
+        }
+
+        int[] from = new int[size], to = new int[size];
+        size = 0;
+        for (int v = 0; v < graph.V(); v++) {
+            for (int e = graph.begin(v); e < graph.end(v); e++) {
+                int w = graph.target(e);
+                if (id[v] != id[w]) {
+                    from[size] = id[v];
+                    to[size++] = id[w];
+                }
+            }
+        }
+
+        Integer[] components = new Integer[count];
+        for (int c = 0; c < count; c++)
+            components[c] = c;
+
+        Integer source = (graph.source() == null) ? null : componentId(graph.source());
+        return CSRGraph.layout(source, components, from, to, size, null, true);
+    }
+
+    public void debug() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Groups:\n");
+        for (int v = 0; v < graph.V(); v++)
+            sb.append("\t").append(graph.vertex(v).toString()).append(": ").append(id[v]).append("\n");
+        sb.append("\n");
+
+        System.out.println(sb.toString());
+    }
+}
@@ -0,0 +1,103 @@
+package io.imulab.review.java.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tarjan's strongly connected components, in one depth first search and without a reversed copy of the graph.
+ *
+ * Vertices are numbered in the order they are reached, and pushed on a stack as they are. low[v] is the lowest number
+ * v reaches through the vertices below it in the search, and one back or cross edge to a vertex still on the stack.
+ * When the search is done with a vertex whose low is its own number, it is the first vertex of its component, which is
+ * everything above it on the stack. The search keeps its own stack, so deep graphs do not overflow the call stack.
+ *
+ * Components are numbered sinks first, in reversed topological order of the condensation.
+ */
+public class TarjanSCC<V extends Comparable<V>> extends SCC<V> {
+
+    public TarjanSCC(Graph<V> graph) {
+        this(CSRGraph.of(graph));
+    }
+
+    public TarjanSCC(CSRGraph<V> graph) {
+        super(graph);
+
+        int n = graph.V();
+        int[] vertices = new int[n];
+        for (int v = 0; v < n; v++)
+            vertices[v] = v;
+
+        Arrays.fill(id, -1);
+        AtomicInteger ids = new AtomicInteger();
+        components(graph, vertices, 0, n, null, 0, id, ids, new int[n], new int[n]);
+        count = ids.get();
+    }
+
+    /**
+     * Find the components of the subgraph of the given vertices.
+     *
+     * @param graph     the whole graph
+     * @param vertices  the vertices of the subgraph are vertices[from, to)
+     * @param color     if not null, edges to vertices of another color than c are left out.
+     * @param id        the components, -1 for vertices without one yet, which must include the subgraph. Vertices
+     *                  that have one are left out.
+     * @param ids       hands out component ids
+     * @param number    order of reach, indexed by vertex, 0 over the subgraph
+     * @param low       indexed by vertex
+     */
+    static void components(CSRGraph<?> graph, int[] vertices, int from, int to, int[] color, int c, int[] id,
+                           AtomicInteger ids, int[] number, int[] low) {
+        int size = to - from;
+        int[] stack = new int[size], call = new int[size], next = new int[size];
+        int sp = 0, counter = 0;
+
+        for (int i = from; i < to; i++) {
+            int root = vertices[i];
+            if (number[root] != 0 || id[root] >= 0)
+                continue;
+
+            int top = 0;
+            call[0] = root;
+            next[0] = graph.begin(root);
+            number[root] = low[root] = ++counter;
+            stack[sp++] = root;
+
+            while (top >= 0) {
+                int v = call[top];
+                int e = next[top];
+
+                if (e < graph.end(v)) {
+                    next[top] = e + 1;
+                    int w = graph.target(e);
+                    if (id[w] >= 0 || (color != null && color[w] != c))
+                        continue;
+
+                    if (number[w] == 0) {
+                        number[w] = low[w] = ++counter;
+                        stack[sp++] = w;
+                        top++;
+                        call[top] = w;
+                        next[top] = graph.begin(w);
+                    } else {
+                        // on the stack, as vertices done with have an id
+                        low[v] = Math.min(low[v], number[w]);
+                    }
+                    continue;
+                }
+
+                if (low[v] == number[v]) {
+                    int component = ids.getAndIncrement();
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        id[w] = component;
+                    } while (w != v);
+                }
+
+                top--;
+                if (top >= 0)
+                    low[call[top]] = Math.min(low[call[top]], low[v]);
+            }
+        }
+    }
+}
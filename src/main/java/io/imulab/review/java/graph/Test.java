@@ -57,5 +57,18 @@ public class Test {
         System.out.println("3 and 8 is strongly connected? " + scc.isStronglyConnected(3, 8));
         System.out.println("2 and 3 is strongly connected? " + scc.isStronglyConnected(2, 3));
         System.out.println("5 and 12 is strongly connected? " + scc.isStronglyConnected(5, 12));
+
+        // a chain of 2-cycles, 0 <-> 1 -> 2 <-> 3 -> ..., where each forward-backward pivot only peels off one pair
+        CSRGraph.Builder<Integer> chain = CSRGraph.directed();
+        for (int i = 0; i < 40_000; i += 2) {
+            chain.addEdge(i, i + 1);
+            chain.addEdge(i + 1, i);
+            if (i > 0)
+                chain.addEdge(i - 1, i);
+        }
+        ForwardBackwardSCC<Integer> chainScc = new ForwardBackwardSCC<>(chain.build());
+        System.out.println("Components of a chain of 20000 2-cycles: " + chainScc.count());
+        System.out.println("38000 and 38001 is strongly connected? " + chainScc.isStronglyConnected(38000, 38001));
+        System.out.println("38001 and 38002 is strongly connected? " + chainScc.isStronglyConnected(38001, 38002));
     }
 }
@@ -1,18 +1,260 @@
 package io.imulab.review.java.graph;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Topological order by Kahn's algorithm, which finds a cycle in the same pass when there is one.
+ *
+ * The vertices with no edge in make the first level. Taking a level out of the graph leaves the vertices with no
+ * edge in left, which make the next level, until no vertex is left, or until no vertex without an edge in is left,
+ * which means the rest hold a cycle. No two vertices of a level have a path between them, so each level is work that
+ * can run at once, once the levels before it are done. Each level comes in the natural order of its vertices.
+ *
+ * The parallel mode takes the edges out of a level on the fork/join pool, counting edges in atomically.
+ */
 public class TopologicalSort<V extends Comparable<V>> {
 
-    private Iterable<V> order;
+    /**
+     * Levels of at most this many vertices are taken out sequentially.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 11;
+
+    private final CSRGraph<V> graph;
+
+    /**
+     * The vertices ordered, order[0, size), level by level.
+     */
+    private final int[] order;
+    private int size;
+
+    /**
+     * Level i is order[levels[i], levels[i+1]).
+     */
+    private int[] levels;
+
+    /**
+     * level[v] is the level of vertex v, -1 if it is on or after a cycle.
+     */
+    private final int[] level;
+
+    /**
+     * A cycle, in edge order, starting and ending with the same vertex. Empty if there is none.
+     */
+    private int[] cycle = new int[0];
 
     public TopologicalSort(Graph<V> graph) {
-        DirectedCycle cycleFinder = new DirectedCycle(graph);
-        if (!cycleFinder.hasCycle()) {
-            DepthFirstSearch<V> dfs = new DepthFirstSearch<>(graph);
-            this.order = dfs.getReversePost();
+        this(CSRGraph.of(graph), null);
+    }
+
+    public TopologicalSort(Graph<V> graph, ForkJoinPool pool) {
+        this(CSRGraph.of(graph), PARALLEL_THRESHOLD, pool);
+    }
+
+    /**
+     * @param graph the graph
+     * @param pool  the pool to run the tasks on, or null to sort sequentially
+     */
+    public TopologicalSort(CSRGraph<V> graph, ForkJoinPool pool) {
+        this(graph, PARALLEL_THRESHOLD, pool);
+    }
+
+    /**
+     * @param graph     the graph
+     * @param threshold levels of at most this many vertices are taken out sequentially
+     * @param pool      the pool to run the tasks on, or null to sort sequentially
+     */
+    public TopologicalSort(CSRGraph<V> graph, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        int n = graph.V();
+        this.graph = graph;
+        this.order = new int[n];
+        this.level = new int[n];
+        this.levels = new int[n + 1];
+
+        int[] in = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.begin(v); e < graph.end(v); e++)
+                in[graph.target(e)]++;
+        }
+
+        for (int v = 0; v < n; v++) {
+            if (in[v] == 0)
+                order[size++] = v;
+        }
+
+        Arrays.fill(level, -1);
+        if (pool == null)
+            sort(in);
+        else
+            sort(new AtomicIntegerArray(in), threshold, pool);
+
+        if (size < n)
+            findCycle();
+    }
+
+    private void sort(int[] in) {
+        int l = 0;
+        for (int lo = 0, hi; lo < size; lo = hi, l++) {
+            hi = size;
+            Arrays.sort(order, lo, hi);
+            levels[l] = lo;
+
+            for (int i = lo; i < hi; i++) {
+                int v = order[i];
+                level[v] = l;
+                for (int e = graph.begin(v); e < graph.end(v); e++) {
+                    int w = graph.target(e);
+                    if (--in[w] == 0)
+                        order[size++] = w;
+                }
+            }
+        }
+        levels[l] = size;
+        levels = Arrays.copyOf(levels, l + 1);
+    }
+
+    private void sort(AtomicIntegerArray in, int threshold, ForkJoinPool pool) {
+        AtomicInteger tail = new AtomicInteger(size);
+
+        int l = 0;
+        for (int lo = 0, hi; lo < size; lo = hi, l++) {
+            hi = size;
+            Arrays.sort(order, lo, hi);
+            levels[l] = lo;
+
+            pool.invoke(new LevelTask(in, tail, lo, hi, l, threshold));
+            size = tail.get();
         }
+        levels[l] = size;
+        levels = Arrays.copyOf(levels, l + 1);
     }
 
+    /**
+     * Takes the vertices order[lo, hi) of a level out of the graph, appending the vertices left with no edge in to
+     * the order.
+     */
+    private final class LevelTask extends RecursiveAction {
+
+        private final AtomicIntegerArray in;
+        private final AtomicInteger tail;
+        private final int lo, hi, l, threshold;
+
+        LevelTask(AtomicIntegerArray in, AtomicInteger tail, int lo, int hi, int l, int threshold) {
+            this.in = in;
+            this.tail = tail;
+            this.lo = lo;
+            this.hi = hi;
+            this.l = l;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > threshold) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new LevelTask(in, tail, lo, mid, l, threshold),
+                        new LevelTask(in, tail, mid, hi, l, threshold));
+                return;
+            }
+
+            for (int i = lo; i < hi; i++) {
+                int v = order[i];
+                level[v] = l;
+                for (int e = graph.begin(v); e < graph.end(v); e++) {
+                    int w = graph.target(e);
+                    if (in.decrementAndGet(w) == 0)
+                        order[tail.getAndIncrement()] = w;
+                }
+            }
+        }
+    }
+
+    /**
+     * Every vertex left has an edge in from another vertex left, so walking those edges backwards from any of them
+     * comes back to a vertex already seen.
+     */
+    private void findCycle() {
+        CSRGraph<V> reversed = graph.reversed();
+        int[] seen = new int[graph.V()];
+        int[] path = new int[graph.V()];
+        int length = 0;
+
+        int v = 0;
+        while (level[v] >= 0)
+            v++;
+
+        while (seen[v] == 0) {
+            path[length++] = v;
+            seen[v] = length;
+
+            for (int e = reversed.begin(v); e < reversed.end(v); e++) {
+                if (level[reversed.target(e)] < 0) {
+                    v = reversed.target(e);
+                    break;
+                }
+            }
+        }
+
+        // path[seen[v]-1, length) walks the cycle backwards, from v
+        int from = seen[v] - 1;
+        cycle = new int[length - from + 1];
+        cycle[0] = v;
+        for (int i = 1; i < cycle.length; i++)
+            cycle[i] = path[length - i];
+    }
+
+    public boolean hasOrder() {
+        return cycle.length == 0;
+    }
+
+    /**
+     * @return  the vertices in topological order, or null if there is a cycle, see {@link #getCycle()}.
+     */
     public Iterable<V> order() {
-        return order;
+        return hasOrder() ? graph.vertices(order, 0, size) : null;
+    }
+
+    /**
+     * @return  the ints of the vertices in topological order, only those before the cycle if there is one. Not to be
+     *          modified.
+     */
+    public int[] getOrder() {
+        return (size == order.length) ? order : Arrays.copyOf(order, size);
+    }
+
+    /**
+     * @return  the number of levels. If there is a cycle, only the vertices before it have one.
+     */
+    public int levels() {
+        return levels.length - 1;
+    }
+
+    /**
+     * @return  the vertices of the level, which have no path between any two of them.
+     */
+    public Iterable<V> level(int l) {
+        return graph.vertices(order, levels[l], levels[l + 1]);
+    }
+
+    /**
+     * @return  the level of the vertex, -1 if it is on or after a cycle, or not in the graph.
+     */
+    public int levelOf(V vertex) {
+        int v = graph.indexOf(vertex);
+        return (v < 0) ? -1 : level[v];
+    }
+
+    /**
+     * @return  the vertices of a cycle, in edge order, starting and ending with the same vertex. Empty if there is
+     *          none.
+     */
+    public Iterable<V> getCycle() {
+        return hasOrder() ? Collections.emptyList() : graph.vertices(cycle, 0, cycle.length);
     }
 }
@@ -0,0 +1,916 @@
+package io.imulab.review.java.sort;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Argsort: the sorted order of an array of keys, as a permutation of its indexes, leaving the keys where they are.
+ * order[0] is the index of the smallest key, order[1] that of the next one, and so on.
+ *
+ * The keys are extracted up front into a primitive array, one per row, so that sorting compares primitives rather than
+ * chasing a pointer per compare. The permutation then reorders any number of parallel columns the same way, see
+ * {@link #reorder(Object[], int[])}.
+ *
+ * {@link #mergeSort(int[])} follows {@link Merge}: insertion sort below the cutoff, the merge skipped when the halves
+ * are already in order, and it is stable, so rows with equal keys keep their order. {@link #quickSort(int[])} follows
+ * {@link Quick}: ninther pivots and heap sort past the depth limit. It is in place on the index array and not stable.
+ * Both have a parallel variant on a fork/join pool, the merge sort one splitting large merges as {@link Merge} does.
+ *
+ * Keys may be ints, longs or doubles, doubles being ordered by {@link Double#compare(double, double)}.
+ */
+public class ArgSort {
+
+    /**
+     * Ranges (and merges) smaller than this are handled sequentially by the parallel sorts.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Stable argsort of the keys.
+     *
+     * @param keys  one key per row
+     * @return      the row indexes in key order
+     */
+    public static int[] mergeSort(int[] keys) {
+        return new IntKeys(keys).mergeSort();
+    }
+
+    public static int[] mergeSort(long[] keys) {
+        return new LongKeys(keys).mergeSort();
+    }
+
+    public static int[] mergeSort(double[] keys) {
+        return new DoubleKeys(keys).mergeSort();
+    }
+
+    /**
+     * Stable argsort into the given order array, with aux as scratch space, both at least as long as the keys, so
+     * that nothing is allocated.
+     */
+    static void mergeSort(int[] keys, int[] order, int[] aux) {
+        new IntKeys(keys).mergeSort(order, aux);
+    }
+
+    static void mergeSort(long[] keys, int[] order, int[] aux) {
+        new LongKeys(keys).mergeSort(order, aux);
+    }
+
+    static void mergeSort(double[] keys, int[] order, int[] aux) {
+        new DoubleKeys(keys).mergeSort(order, aux);
+    }
+
+    /**
+     * Argsort of the keys, rows with equal keys in no particular order.
+     *
+     * @param keys  one key per row
+     * @return      the row indexes in key order
+     */
+    public static int[] quickSort(int[] keys) {
+        return new IntKeys(keys).quickSort();
+    }
+
+    public static int[] quickSort(long[] keys) {
+        return new LongKeys(keys).quickSort();
+    }
+
+    public static int[] quickSort(double[] keys) {
+        return new DoubleKeys(keys).quickSort();
+    }
+
+    public static int[] parallelMergeSort(int[] keys) {
+        return parallelMergeSort(keys, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Stable argsort of the keys on the fork/join pool.
+     *
+     * @param keys      one key per row
+     * @param threshold ranges and merges of at most this many rows are not split further
+     * @param pool      the pool to run the tasks on
+     * @return          the row indexes in key order
+     */
+    public static int[] parallelMergeSort(int[] keys, int threshold, ForkJoinPool pool) {
+        return new IntKeys(keys).parallelMergeSort(threshold, pool);
+    }
+
+    public static int[] parallelMergeSort(long[] keys) {
+        return parallelMergeSort(keys, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static int[] parallelMergeSort(long[] keys, int threshold, ForkJoinPool pool) {
+        return new LongKeys(keys).parallelMergeSort(threshold, pool);
+    }
+
+    public static int[] parallelMergeSort(double[] keys) {
+        return parallelMergeSort(keys, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static int[] parallelMergeSort(double[] keys, int threshold, ForkJoinPool pool) {
+        return new DoubleKeys(keys).parallelMergeSort(threshold, pool);
+    }
+
+    public static int[] parallelQuickSort(int[] keys) {
+        return parallelQuickSort(keys, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Argsort of the keys on the fork/join pool, rows with equal keys in no particular order.
+     *
+     * @param keys      one key per row
+     * @param threshold ranges of at most this many rows are not split further
+     * @param pool      the pool to run the tasks on
+     * @return          the row indexes in key order
+     */
+    public static int[] parallelQuickSort(int[] keys, int threshold, ForkJoinPool pool) {
+        return new IntKeys(keys).parallelQuickSort(threshold, pool);
+    }
+
+    public static int[] parallelQuickSort(long[] keys) {
+        return parallelQuickSort(keys, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static int[] parallelQuickSort(long[] keys, int threshold, ForkJoinPool pool) {
+        return new LongKeys(keys).parallelQuickSort(threshold, pool);
+    }
+
+    public static int[] parallelQuickSort(double[] keys) {
+        return parallelQuickSort(keys, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static int[] parallelQuickSort(double[] keys, int threshold, ForkJoinPool pool) {
+        return new DoubleKeys(keys).parallelQuickSort(threshold, pool);
+    }
+
+    /**
+     * @return  a copy of the column with its rows in the given order: result[i] = column[order[i]].
+     */
+    public static <E> E[] reorder(E[] column, int[] order) {
+        E[] result = Arrays.copyOf(column, order.length);
+        for (int i = 0; i < order.length; i++)
+            result[i] = column[order[i]];
+        return result;
+    }
+
+    public static int[] reorder(int[] column, int[] order) {
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++)
+            result[i] = column[order[i]];
+        return result;
+    }
+
+    public static long[] reorder(long[] column, int[] order) {
+        long[] result = new long[order.length];
+        for (int i = 0; i < order.length; i++)
+            result[i] = column[order[i]];
+        return result;
+    }
+
+    public static double[] reorder(double[] column, int[] order) {
+        double[] result = new double[order.length];
+        for (int i = 0; i < order.length; i++)
+            result[i] = column[order[i]];
+        return result;
+    }
+
+    /**
+     * The sorts, on an index array, against keys of some primitive type. Only the tasks of the parallel sorts call
+     * through this class, the sequential sorts of the subclasses call their own methods directly.
+     */
+    private abstract static class Keys {
+
+        final int n;
+
+        Keys(int n) {
+            this.n = n;
+        }
+
+        /**
+         * Compare the keys of rows x and y.
+         */
+        abstract int compare(int x, int y);
+
+        abstract void mergeSort(int[] order, int[] aux, int lo, int hi);
+
+        /**
+         * Merge the sorted runs src[lo1..hi1] and src[lo2..hi2] into dst, starting at index d. Ties go to the first
+         * run.
+         */
+        abstract void merge(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dst, int d);
+
+        abstract void quickSort(int[] order, int lo, int hi, int depth);
+
+        abstract void heapSort(int[] order, int lo, int hi);
+
+        abstract int partition(int[] order, int lo, int hi);
+
+        int[] mergeSort() {
+            int[] order = new int[n];
+            mergeSort(order, new int[n]);
+            return order;
+        }
+
+        /**
+         * Fill order with the stable argsort, using aux as scratch space.
+         */
+        void mergeSort(int[] order, int[] aux) {
+            assert order.length >= n && aux.length >= n;
+
+            identity(order, n);
+            mergeSort(order, aux, 0, n - 1);
+        }
+
+        int[] quickSort() {
+            int[] order = new int[n];
+            identity(order, n);
+            quickSort(order, 0, n - 1, Quick.depthLimit(n));
+            return order;
+        }
+
+        int[] parallelMergeSort(int threshold, ForkJoinPool pool) {
+            assert threshold > 0;
+
+            int[] order = new int[n];
+            identity(order, n);
+            if (n <= threshold)
+                mergeSort(order, new int[n], 0, n - 1);
+            else
+                pool.invoke(new MergeSortTask(this, order, new int[n], 0, n - 1, threshold));
+            return order;
+        }
+
+        int[] parallelQuickSort(int threshold, ForkJoinPool pool) {
+            assert threshold > 0;
+
+            int[] order = new int[n];
+            identity(order, n);
+            pool.invoke(new QuickSortTask(this, order, 0, n - 1, Quick.depthLimit(n), threshold));
+            return order;
+        }
+
+        /**
+         * @return  the first index in a[lo, hi) whose key is not less than the key of row x, or hi if there is none.
+         */
+        int lowerBound(int[] a, int lo, int hi, int x) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(a[mid], x) < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * @return  the first index in a[lo, hi) whose key is greater than the key of row x, or hi if there is none.
+         */
+        int upperBound(int[] a, int lo, int hi, int x) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(a[mid], x) <= 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        private static void identity(int[] order, int n) {
+            for (int i = 0; i < n; i++)
+                order[i] = i;
+        }
+    }
+
+    private static final class IntKeys extends Keys {
+
+        private final int[] keys;
+
+        IntKeys(int[] keys) {
+            super(keys.length);
+            this.keys = keys;
+        }
+
+        @Override
+        int compare(int x, int y) {
+            return Integer.compare(keys[x], keys[y]);
+        }
+
+        @Override
+        void mergeSort(int[] order, int[] aux, int lo, int hi) {
+            if (hi - lo < SmallSort.CUTOFF) {
+                insertionSort(order, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            mergeSort(order, aux, lo, mid);
+            mergeSort(order, aux, mid + 1, hi);
+
+            // already in order, skip the merge
+            if (Integer.compare(keys[order[mid]], keys[order[mid + 1]]) <= 0)
+                return;
+
+            System.arraycopy(order, lo, aux, lo, hi + 1 - lo);
+            merge(aux, lo, mid, mid + 1, hi, order, lo);
+        }
+
+        @Override
+        void merge(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dst, int d) {
+            int[] keys = this.keys;
+
+            int i = lo1, j = lo2, k = d;
+            while (i <= hi1 && j <= hi2)
+                dst[k++] = (Integer.compare(keys[src[j]], keys[src[i]]) < 0) ? src[j++] : src[i++];
+
+            System.arraycopy(src, i, dst, k, hi1 + 1 - i);
+            System.arraycopy(src, j, dst, k + hi1 + 1 - i, hi2 + 1 - j);
+        }
+
+        /**
+         * Stable, as an index only moves past indexes with greater keys.
+         */
+        private void insertionSort(int[] order, int lo, int hi) {
+            int[] keys = this.keys;
+
+            for (int i = lo + 1; i <= hi; i++) {
+                int v = order[i];
+                int key = keys[v];
+                int j = i;
+                for (; j > lo && Integer.compare(key, keys[order[j - 1]]) < 0; j--)
+                    order[j] = order[j - 1];
+                order[j] = v;
+            }
+        }
+
+        @Override
+        void quickSort(int[] order, int lo, int hi, int depth) {
+            while (hi - lo >= Quick.INSERTION_CUTOFF) {
+                if (depth-- == 0) {
+                    heapSort(order, lo, hi);
+                    return;
+                }
+
+                int k = partition(order, lo, hi);
+
+                if (k - lo < hi - k) {
+                    quickSort(order, lo, k - 1, depth);
+                    lo = k + 1;
+                } else {
+                    quickSort(order, k + 1, hi, depth);
+                    hi = k - 1;
+                }
+            }
+
+            insertionSort(order, lo, hi);
+        }
+
+        @Override
+        int partition(int[] order, int lo, int hi) {
+            int[] keys = this.keys;
+
+            Utility.swap(order, lo, pivot(order, lo, hi));
+            int pivot = keys[order[lo]];
+
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (Integer.compare(keys[order[++i]], pivot) < 0)
+                    if (i == hi)
+                        break;
+
+                while (Integer.compare(pivot, keys[order[--j]]) < 0)
+                    if (j == lo)
+                        break;
+
+                if (i >= j)
+                    break;
+
+                Utility.swap(order, i, j);
+            }
+
+            Utility.swap(order, lo, j);
+            return j;
+        }
+
+        private int pivot(int[] order, int lo, int hi) {
+            int n = hi - lo + 1;
+            int mid = lo + (n >>> 1);
+            if (n < Quick.NINTHER_THRESHOLD)
+                return median(order, lo, mid, hi);
+
+            int eps = n >>> 3;
+            return median(order,
+                    median(order, lo, lo + eps, lo + eps + eps),
+                    median(order, mid - eps, mid, mid + eps),
+                    median(order, hi - eps - eps, hi - eps, hi));
+        }
+
+        private int median(int[] order, int i, int j, int k) {
+            int a = keys[order[i]], b = keys[order[j]], c = keys[order[k]];
+            return Integer.compare(a, b) < 0 ?
+                    (Integer.compare(b, c) < 0 ? j : Integer.compare(a, c) < 0 ? k : i) :
+                    (Integer.compare(c, b) < 0 ? j : Integer.compare(c, a) < 0 ? k : i);
+        }
+
+        /**
+         * 0-based binary heap sort of order[lo..hi], the fallback past the depth limit.
+         */
+        @Override
+        void heapSort(int[] order, int lo, int hi) {
+            int n = hi - lo + 1;
+            for (int k = n / 2 - 1; k >= 0; k--)
+                sink(order, lo, k, n);
+            while (n > 1) {
+                Utility.swap(order, lo, lo + --n);
+                sink(order, lo, 0, n);
+            }
+        }
+
+        private void sink(int[] order, int lo, int k, int n) {
+            int[] keys = this.keys;
+
+            int v = order[lo + k];
+            int key = keys[v];
+            int child;
+            while ((child = 2 * k + 1) < n) {
+                if (child + 1 < n && Integer.compare(keys[order[lo + child]], keys[order[lo + child + 1]]) < 0)
+                    child++;
+                if (Integer.compare(key, keys[order[lo + child]]) >= 0)
+                    break;
+                order[lo + k] = order[lo + child];
+                k = child;
+            }
+            order[lo + k] = v;
+        }
+    }
+
+    private static final class LongKeys extends Keys {
+
+        private final long[] keys;
+
+        LongKeys(long[] keys) {
+            super(keys.length);
+            this.keys = keys;
+        }
+
+        @Override
+        int compare(int x, int y) {
+            return Long.compare(keys[x], keys[y]);
+        }
+
+        @Override
+        void mergeSort(int[] order, int[] aux, int lo, int hi) {
+            if (hi - lo < SmallSort.CUTOFF) {
+                insertionSort(order, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            mergeSort(order, aux, lo, mid);
+            mergeSort(order, aux, mid + 1, hi);
+
+            // already in order, skip the merge
+            if (Long.compare(keys[order[mid]], keys[order[mid + 1]]) <= 0)
+                return;
+
+            System.arraycopy(order, lo, aux, lo, hi + 1 - lo);
+            merge(aux, lo, mid, mid + 1, hi, order, lo);
+        }
+
+        @Override
+        void merge(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dst, int d) {
+            long[] keys = this.keys;
+
+            int i = lo1, j = lo2, k = d;
+            while (i <= hi1 && j <= hi2)
+                dst[k++] = (Long.compare(keys[src[j]], keys[src[i]]) < 0) ? src[j++] : src[i++];
+
+            System.arraycopy(src, i, dst, k, hi1 + 1 - i);
+            System.arraycopy(src, j, dst, k + hi1 + 1 - i, hi2 + 1 - j);
+        }
+
+        /**
+         * Stable, as an index only moves past indexes with greater keys.
+         */
+        private void insertionSort(int[] order, int lo, int hi) {
+            long[] keys = this.keys;
+
+            for (int i = lo + 1; i <= hi; i++) {
+                int v = order[i];
+                long key = keys[v];
+                int j = i;
+                for (; j > lo && Long.compare(key, keys[order[j - 1]]) < 0; j--)
+                    order[j] = order[j - 1];
+                order[j] = v;
+            }
+        }
+
+        @Override
+        void quickSort(int[] order, int lo, int hi, int depth) {
+            while (hi - lo >= Quick.INSERTION_CUTOFF) {
+                if (depth-- == 0) {
+                    heapSort(order, lo, hi);
+                    return;
+                }
+
+                int k = partition(order, lo, hi);
+
+                if (k - lo < hi - k) {
+                    quickSort(order, lo, k - 1, depth);
+                    lo = k + 1;
+                } else {
+                    quickSort(order, k + 1, hi, depth);
+                    hi = k - 1;
+                }
+            }
+
+            insertionSort(order, lo, hi);
+        }
+
+        @Override
+        int partition(int[] order, int lo, int hi) {
+            long[] keys = this.keys;
+
+            Utility.swap(order, lo, pivot(order, lo, hi));
+            long pivot = keys[order[lo]];
+
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (Long.compare(keys[order[++i]], pivot) < 0)
+                    if (i == hi)
+                        break;
+
+                while (Long.compare(pivot, keys[order[--j]]) < 0)
+                    if (j == lo)
+                        break;
+
+                if (i >= j)
+                    break;
+
+                Utility.swap(order, i, j);
+            }
+
+            Utility.swap(order, lo, j);
+            return j;
+        }
+
+        private int pivot(int[] order, int lo, int hi) {
+            int n = hi - lo + 1;
+            int mid = lo + (n >>> 1);
+            if (n < Quick.NINTHER_THRESHOLD)
+                return median(order, lo, mid, hi);
+
+            int eps = n >>> 3;
+            return median(order,
+                    median(order, lo, lo + eps, lo + eps + eps),
+                    median(order, mid - eps, mid, mid + eps),
+                    median(order, hi - eps - eps, hi - eps, hi));
+        }
+
+        private int median(int[] order, int i, int j, int k) {
+            long a = keys[order[i]], b = keys[order[j]], c = keys[order[k]];
+            return Long.compare(a, b) < 0 ?
+                    (Long.compare(b, c) < 0 ? j : Long.compare(a, c) < 0 ? k : i) :
+                    (Long.compare(c, b) < 0 ? j : Long.compare(c, a) < 0 ? k : i);
+        }
+
+        /**
+         * 0-based binary heap sort of order[lo..hi], the fallback past the depth limit.
+         */
+        @Override
+        void heapSort(int[] order, int lo, int hi) {
+            int n = hi - lo + 1;
+            for (int k = n / 2 - 1; k >= 0; k--)
+                sink(order, lo, k, n);
+            while (n > 1) {
+                Utility.swap(order, lo, lo + --n);
+                sink(order, lo, 0, n);
+            }
+        }
+
+        private void sink(int[] order, int lo, int k, int n) {
+            long[] keys = this.keys;
+
+            int v = order[lo + k];
+            long key = keys[v];
+            int child;
+            while ((child = 2 * k + 1) < n) {
+                if (child + 1 < n && Long.compare(keys[order[lo + child]], keys[order[lo + child + 1]]) < 0)
+                    child++;
+                if (Long.compare(key, keys[order[lo + child]]) >= 0)
+                    break;
+                order[lo + k] = order[lo + child];
+                k = child;
+            }
+            order[lo + k] = v;
+        }
+    }
+
+    private static final class DoubleKeys extends Keys {
+
+        private final double[] keys;
+
+        DoubleKeys(double[] keys) {
+            super(keys.length);
+            this.keys = keys;
+        }
+
+        @Override
+        int compare(int x, int y) {
+            return Double.compare(keys[x], keys[y]);
+        }
+
+        @Override
+        void mergeSort(int[] order, int[] aux, int lo, int hi) {
+            if (hi - lo < SmallSort.CUTOFF) {
+                insertionSort(order, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            mergeSort(order, aux, lo, mid);
+            mergeSort(order, aux, mid + 1, hi);
+
+            // already in order, skip the merge
+            if (Double.compare(keys[order[mid]], keys[order[mid + 1]]) <= 0)
+                return;
+
+            System.arraycopy(order, lo, aux, lo, hi + 1 - lo);
+            merge(aux, lo, mid, mid + 1, hi, order, lo);
+        }
+
+        @Override
+        void merge(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dst, int d) {
+            double[] keys = this.keys;
+
+            int i = lo1, j = lo2, k = d;
+            while (i <= hi1 && j <= hi2)
+                dst[k++] = (Double.compare(keys[src[j]], keys[src[i]]) < 0) ? src[j++] : src[i++];
+
+            System.arraycopy(src, i, dst, k, hi1 + 1 - i);
+            System.arraycopy(src, j, dst, k + hi1 + 1 - i, hi2 + 1 - j);
+        }
+
+        /**
+         * Stable, as an index only moves past indexes with greater keys.
+         */
+        private void insertionSort(int[] order, int lo, int hi) {
+            double[] keys = this.keys;
+
+            for (int i = lo + 1; i <= hi; i++) {
+                int v = order[i];
+                double key = keys[v];
+                int j = i;
+                for (; j > lo && Double.compare(key, keys[order[j - 1]]) < 0; j--)
+                    order[j] = order[j - 1];
+                order[j] = v;
+            }
+        }
+
+        @Override
+        void quickSort(int[] order, int lo, int hi, int depth) {
+            while (hi - lo >= Quick.INSERTION_CUTOFF) {
+                if (depth-- == 0) {
+                    heapSort(order, lo, hi);
+                    return;
+                }
+
+                int k = partition(order, lo, hi);
+
+                if (k - lo < hi - k) {
+                    quickSort(order, lo, k - 1, depth);
+                    lo = k + 1;
+                } else {
+                    quickSort(order, k + 1, hi, depth);
+                    hi = k - 1;
+                }
+            }
+
+            insertionSort(order, lo, hi);
+        }
+
+        @Override
+        int partition(int[] order, int lo, int hi) {
+            double[] keys = this.keys;
+
+            Utility.swap(order, lo, pivot(order, lo, hi));
+            double pivot = keys[order[lo]];
+
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (Double.compare(keys[order[++i]], pivot) < 0)
+                    if (i == hi)
+                        break;
+
+                while (Double.compare(pivot, keys[order[--j]]) < 0)
+                    if (j == lo)
+                        break;
+
+                if (i >= j)
+                    break;
+
+                Utility.swap(order, i, j);
+            }
+
+            Utility.swap(order, lo, j);
+            return j;
+        }
+
+        private int pivot(int[] order, int lo, int hi) {
+            int n = hi - lo + 1;
+            int mid = lo + (n >>> 1);
+            if (n < Quick.NINTHER_THRESHOLD)
+                return median(order, lo, mid, hi);
+
+            int eps = n >>> 3;
+            return median(order,
+                    median(order, lo, lo + eps, lo + eps + eps),
+                    median(order, mid - eps, mid, mid + eps),
+                    median(order, hi - eps - eps, hi - eps, hi));
+        }
+
+        private int median(int[] order, int i, int j, int k) {
+            double a = keys[order[i]], b = keys[order[j]], c = keys[order[k]];
+            return Double.compare(a, b) < 0 ?
+                    (Double.compare(b, c) < 0 ? j : Double.compare(a, c) < 0 ? k : i) :
+                    (Double.compare(c, b) < 0 ? j : Double.compare(c, a) < 0 ? k : i);
+        }
+
+        /**
+         * 0-based binary heap sort of order[lo..hi], the fallback past the depth limit.
+         */
+        @Override
+        void heapSort(int[] order, int lo, int hi) {
+            int n = hi - lo + 1;
+            for (int k = n / 2 - 1; k >= 0; k--)
+                sink(order, lo, k, n);
+            while (n > 1) {
+                Utility.swap(order, lo, lo + --n);
+                sink(order, lo, 0, n);
+            }
+        }
+
+        private void sink(int[] order, int lo, int k, int n) {
+            double[] keys = this.keys;
+
+            int v = order[lo + k];
+            double key = keys[v];
+            int child;
+            while ((child = 2 * k + 1) < n) {
+                if (child + 1 < n && Double.compare(keys[order[lo + child]], keys[order[lo + child + 1]]) < 0)
+                    child++;
+                if (Double.compare(key, keys[order[lo + child]]) >= 0)
+                    break;
+                order[lo + k] = order[lo + child];
+                k = child;
+            }
+            order[lo + k] = v;
+        }
+    }
+
+    /**
+     * Sorts order[lo..hi] in place, forking the two halves. Each task only touches its own range of order and aux.
+     */
+    private static final class MergeSortTask extends RecursiveAction {
+
+        private final Keys keys;
+        private final int[] order, aux;
+        private final int lo, hi, threshold;
+
+        MergeSortTask(Keys keys, int[] order, int[] aux, int lo, int hi, int threshold) {
+            this.keys = keys;
+            this.order = order;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < threshold) {
+                keys.mergeSort(order, aux, lo, hi);
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new MergeSortTask(keys, order, aux, lo, mid, threshold),
+                    new MergeSortTask(keys, order, aux, mid + 1, hi, threshold));
+
+            // halves are already in order
+            if (keys.compare(order[mid], order[mid + 1]) <= 0)
+                return;
+
+            System.arraycopy(order, lo, aux, lo, hi + 1 - lo);
+            new MergeTask(keys, aux, lo, mid, mid + 1, hi, order, lo, threshold).compute();
+        }
+    }
+
+    /**
+     * Merges the sorted runs src[lo1..hi1] and src[lo2..hi2] into dst, starting at index d, splitting large merges
+     * around the middle item of the longer run, as {@link Merge} does. Ties go to the first run.
+     */
+    private static final class MergeTask extends RecursiveAction {
+
+        private final Keys keys;
+        private final int[] src, dst;
+        private final int lo1, hi1, lo2, hi2, d, threshold;
+
+        MergeTask(Keys keys, int[] src, int lo1, int hi1, int lo2, int hi2, int[] dst, int d, int threshold) {
+            this.keys = keys;
+            this.src = src;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.dst = dst;
+            this.d = d;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int n1 = hi1 - lo1 + 1, n2 = hi2 - lo2 + 1;
+
+            if (n1 + n2 <= threshold) {
+                keys.merge(src, lo1, hi1, lo2, hi2, dst, d);
+                return;
+            }
+
+            MergeTask left, right;
+            if (n1 >= n2) {
+                // rows of the second run with an equal key go after x
+                int m = (lo1 + hi1) >>> 1;
+                int j = keys.lowerBound(src, lo2, hi2 + 1, src[m]);
+                int p = d + (m - lo1) + (j - lo2);
+                dst[p] = src[m];
+                left = new MergeTask(keys, src, lo1, m - 1, lo2, j - 1, dst, d, threshold);
+                right = new MergeTask(keys, src, m + 1, hi1, j, hi2, dst, p + 1, threshold);
+            } else {
+                // rows of the first run with an equal key go before y
+                int m = (lo2 + hi2) >>> 1;
+                int i = keys.upperBound(src, lo1, hi1 + 1, src[m]);
+                int p = d + (i - lo1) + (m - lo2);
+                dst[p] = src[m];
+                left = new MergeTask(keys, src, lo1, i - 1, lo2, m - 1, dst, d, threshold);
+                right = new MergeTask(keys, src, i, hi1, m + 1, hi2, dst, p + 1, threshold);
+            }
+
+            invokeAll(left, right);
+        }
+    }
+
+    /**
+     * Partitions order[lo..hi] and sorts both sides in parallel, down to the threshold.
+     */
+    private static final class QuickSortTask extends RecursiveAction {
+
+        private final Keys keys;
+        private final int[] order;
+        private final int lo, hi, depth, threshold;
+
+        QuickSortTask(Keys keys, int[] order, int lo, int hi, int depth, int threshold) {
+            this.keys = keys;
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < threshold || hi - lo < Quick.INSERTION_CUTOFF) {
+                keys.quickSort(order, lo, hi, depth);
+                return;
+            }
+            if (depth == 0) {
+                keys.heapSort(order, lo, hi);
+                return;
+            }
+
+            int k = keys.partition(order, lo, hi);
+            invokeAll(new QuickSortTask(keys, order, lo, k - 1, depth - 1, threshold),
+                    new QuickSortTask(keys, order, k + 1, hi, depth - 1, threshold));
+        }
+    }
+
+    public static void main(String[] args) {
+        // a small table: names, with ages to sort the rows by
+        String[] names = {"Ada", "Bob", "Cy", "Di", "Ed", "Flo"};
+        int[] ages = {36, 25, 41, 25, 19, 36};
+
+        int[] order = mergeSort(ages);
+        String[] byAge = reorder(names, order);
+        int[] sortedAges = reorder(ages, order);
+        for (int i = 0; i < order.length; i++)
+            System.out.println(sortedAges[i] + " " + byAge[i]);
+
+        // the same order for all variants, as the keys are distinct
+        SplittableRandom random = new SplittableRandom(42);
+        double[] keys = random.doubles(1 << 18).toArray();
+        int[] expected = mergeSort(keys);
+        assert Arrays.equals(expected, quickSort(keys));
+        assert Arrays.equals(expected, parallelMergeSort(keys));
+        assert Arrays.equals(expected, parallelQuickSort(keys));
+        assert Utility.isSorted(reorder(keys, expected));
+    }
+}
@@ -0,0 +1,329 @@
+package io.imulab.review.java.sort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * External merge sort, for files of fixed-width records that are too large to sort in memory.
+ *
+ * Phase one reads the input in chunks that fit the memory budget, sorts each chunk with {@link Merge}, and spills it
+ * to a temporary file as a sorted run. Phase two merges up to fanIn runs at a time with a min heap of run readers,
+ * repeating until a single run (the output) is left. Every run is read and written sequentially through buffers of
+ * ioBufferSize bytes, so the total I/O is about 2N * (1 + log_fanIn(runs)) bytes.
+ *
+ * Records are ordered by the unsigned, lexicographic order of their key bytes. Records with equal keys keep their
+ * input order, since the chunk sort is stable and the merge breaks ties in favour of the earlier run.
+ */
+public class ExternalMerge {
+
+    /**
+     * Rough per record cost of sorting in memory, on top of the record bytes: the record view plus two references.
+     */
+    private static final int RECORD_OVERHEAD = 32;
+
+    private final int recordSize;
+    private final int keyOffset;
+    private final int keyLength;
+    private final long memoryBudget;
+    private final int fanIn;
+    private final int ioBufferSize;
+
+    /**
+     * Create a sorter with a 64MB memory budget, a fan-in of 16 and 64KB I/O buffers.
+     */
+    public ExternalMerge(int recordSize, int keyOffset, int keyLength) {
+        this(recordSize, keyOffset, keyLength, 64L << 20, 16, 64 << 10);
+    }
+
+    /**
+     * @param recordSize    size of each record in bytes
+     * @param keyOffset     offset of the key within a record
+     * @param keyLength     length of the key in bytes
+     * @param memoryBudget  bytes available to sort a chunk in memory. The merge phase separately uses
+     *                      (fanIn + 1) * ioBufferSize bytes.
+     * @param fanIn         the maximum number of runs merged at once
+     * @param ioBufferSize  size of the read buffer of each run and of the write buffer, rounded down to whole records
+     */
+    public ExternalMerge(int recordSize, int keyOffset, int keyLength, long memoryBudget, int fanIn, int ioBufferSize) {
+        if (recordSize <= 0 || keyOffset < 0 || keyLength <= 0 || keyOffset + keyLength > recordSize)
+            throw new IllegalArgumentException("key must lie within the record");
+        if (memoryBudget < recordSize + RECORD_OVERHEAD)
+            throw new IllegalArgumentException("memory budget must hold at least one record");
+        if (fanIn < 2)
+            throw new IllegalArgumentException("fan-in must be at least 2");
+
+        this.recordSize = recordSize;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+        this.memoryBudget = memoryBudget;
+        this.fanIn = fanIn;
+        this.ioBufferSize = Math.max(recordSize, ioBufferSize / recordSize * recordSize);
+    }
+
+    /**
+     * Sort the records of the input file into the output file. Temporary runs are created next to the output file.
+     *
+     * @param input     file of fixed-width records
+     * @param output    file to write the sorted records to, replaced if it exists
+     */
+    public void sort(Path input, Path output) throws IOException {
+        Path absolute = output.toAbsolutePath();
+        Path tmpDir = Files.createTempDirectory(absolute.getParent(), "runs");
+
+        try {
+            List<Path> runs = split(input, tmpDir);
+
+            while (runs.size() > fanIn) {
+                List<Path> next = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Path> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    if (group.size() == 1) {
+                        next.add(group.get(0));
+                        continue;
+                    }
+
+                    Path merged = Files.createTempFile(tmpDir, "run", ".tmp");
+                    merge(group, merged);
+                    for (Path run : group)
+                        Files.delete(run);
+                    next.add(merged);
+                }
+                runs = next;
+            }
+
+            merge(runs, output);
+        } finally {
+            // also catches runs left behind by a failure half way
+            try (Stream<Path> leftovers = Files.list(tmpDir)) {
+                for (Path run : (Iterable<Path>) leftovers::iterator)
+                    Files.deleteIfExists(run);
+            }
+            Files.delete(tmpDir);
+        }
+    }
+
+    /**
+     * Phase one: cut the input into sorted runs.
+     */
+    private List<Path> split(Path input, Path tmpDir) throws IOException {
+        List<Path> runs = new ArrayList<>();
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size % recordSize != 0)
+                throw new IllegalArgumentException("input size is not a multiple of the record size");
+
+            long budgetRecords = memoryBudget / (recordSize + RECORD_OVERHEAD);
+            int chunkRecords = (int) Math.min(Math.min(budgetRecords, Integer.MAX_VALUE / recordSize), size / recordSize);
+            if (chunkRecords == 0)
+                return runs;
+
+            byte[] chunk = new byte[chunkRecords * recordSize];
+            Record[] records = new Record[chunkRecords];
+
+            for (long remaining = size / recordSize; remaining > 0; ) {
+                int n = (int) Math.min(remaining, chunkRecords);
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, n * recordSize);
+                readFully(in, buffer);
+
+                Record[] view = (n == records.length) ? records : new Record[n];
+                for (int i = 0; i < n; i++)
+                    view[i] = new Record(chunk, i * recordSize);
+                Merge.sort(view);
+
+                Path run = Files.createTempFile(tmpDir, "run", ".tmp");
+                try (FileChannel out = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                    ByteBuffer outBuffer = ByteBuffer.allocateDirect(ioBufferSize);
+                    for (Record r : view) {
+                        if (outBuffer.remaining() < recordSize)
+                            drain(out, outBuffer);
+                        outBuffer.put(chunk, r.offset, recordSize);
+                    }
+                    drain(out, outBuffer);
+                }
+                runs.add(run);
+
+                remaining -= n;
+            }
+        }
+
+        return runs;
+    }
+
+    /**
+     * Phase two: k-way merge of the runs into the target, through a min heap of run readers.
+     */
+    private void merge(List<Path> runs, Path target) throws IOException {
+        RunReader[] heap = new RunReader[runs.size() + 1];
+        int N = 0;
+
+        // Heap keeps the largest item at the root, so reverse the order for a min heap.
+        Comparator<RunReader> order = Comparator.reverseOrder();
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = new RunReader(runs.get(i), i);
+                    if (reader.advance())
+                        heap[++N] = reader;
+                    else
+                        reader.close();
+                }
+
+                for (int k = N / 2; k >= 1; k--)
+                    Heap.sink(heap, k, N, order);
+
+                ByteBuffer outBuffer = ByteBuffer.allocateDirect(ioBufferSize);
+                while (N > 0) {
+                    RunReader top = heap[1];
+                    if (outBuffer.remaining() < recordSize)
+                        drain(out, outBuffer);
+                    outBuffer.put(top.data, top.position, recordSize);
+
+                    // replace an exhausted run with the last leaf, otherwise let its next record find its place
+                    if (!top.advance()) {
+                        top.close();
+                        heap[1] = heap[N];
+                        heap[N--] = null;
+                    }
+                    if (N > 1)
+                        Heap.sink(heap, 1, N, order);
+                }
+                drain(out, outBuffer);
+            } finally {
+                for (int k = 1; k <= N; k++)
+                    heap[k].close();
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("unexpected end of file");
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private int compareKeys(byte[] a, int aRecord, byte[] b, int bRecord) {
+        int x = aRecord + keyOffset, y = bRecord + keyOffset;
+        for (int k = 0; k < keyLength; k++) {
+            int u = a[x + k] & 0xff, v = b[y + k] & 0xff;
+            if (u != v)
+                return u - v;
+        }
+        return 0;
+    }
+
+    /**
+     * A record in a chunk being sorted in memory.
+     */
+    private class Record implements Comparable<Record> {
+
+        private final byte[] chunk;
+        private final int offset;
+
+        Record(byte[] chunk, int offset) {
+            this.chunk = chunk;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Record o) {
+            return compareKeys(chunk, offset, o.chunk, o.offset);
+        }
+    }
+
+    /**
+     * Reads a run one buffer at a time, exposing the current record as data[position, position + recordSize).
+     */
+    private class RunReader implements Comparable<RunReader>, AutoCloseable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final byte[] data;
+        private final int run;
+        private int position;
+
+        RunReader(Path path, int run) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocate(ioBufferSize);
+            this.data = buffer.array();
+            this.run = run;
+            this.buffer.limit(0);
+        }
+
+        /**
+         * Move to the next record.
+         *
+         * @return  false if the run is exhausted.
+         */
+        boolean advance() throws IOException {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                    ;
+                buffer.flip();
+                if (!buffer.hasRemaining())
+                    return false;
+            }
+
+            position = buffer.position();
+            buffer.position(position + recordSize);
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            int cmp = compareKeys(data, position, o.data, o.position);
+            return (cmp != 0) ? cmp : Integer.compare(run, o.run);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int recordSize = 16, records = 100_000;
+
+        // 8 bytes of key, followed by 8 bytes of payload
+        Path input = Files.createTempFile("records", ".bin");
+        Path output = Files.createTempFile("sorted", ".bin");
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize * records);
+        for (int i = 0; i < records; i++)
+            buffer.putLong(ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE)).putLong(i);
+        Files.write(input, buffer.array());
+
+        // about 8 runs, merged 3 at a time
+        new ExternalMerge(recordSize, 0, 8, records / 8 * (recordSize + RECORD_OVERHEAD), 3, 4096)
+                .sort(input, output);
+
+        ByteBuffer sorted = ByteBuffer.wrap(Files.readAllBytes(output));
+        assert sorted.capacity() == recordSize * records;
+        for (int i = recordSize; i < sorted.capacity(); i += recordSize)
+            assert sorted.getLong(i - recordSize) <= sorted.getLong(i);
+
+        System.out.println("Sorted " + records + " records.");
+
+        Files.delete(input);
+        Files.delete(output);
+    }
+}
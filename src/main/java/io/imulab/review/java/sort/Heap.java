@@ -1,5 +1,7 @@
 package io.imulab.review.java.sort;
 
+import java.util.Comparator;
+
 /**
  * Heap sort.
  *
@@ -7,22 +9,186 @@ package io.imulab.review.java.sort;
  * Heap sort uses at most 2NlgN compares and exchanges.
  *
  * But this sort is not stable.
+ *
+ * Besides the textbook 1-based binary heap, there are 0-based versions over a d-ary heap with Floyd's bottom-up sink,
+ * see {@link #sort(Comparable[], int, int, int, SortMetrics)}, which are the ones the other sorts use.
  */
 public class Heap {
 
+    /**
+     * Arity of the heap used by the 0-based primitive sorts, unless one is given.
+     */
+    static final int PRIMITIVE_ARITY = 8;
+
     static <E extends Comparable<E>> void sort(E[] elements, int N) {
+        sort(elements, N, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, int N, SortMetrics metrics) {
         // index 0 should not be used, to make indexing easier.
         assert N == elements.length - 1;
 
+        metrics.begin("Heap", N);
+
         // build heap
         for (int k = N / 2; k >= 1; k--)
-            sink(elements, k, N);
+            sink(elements, k, N, metrics);
 
         // swap first (max) with last and move it out of the heap
         while (N > 1) {
-            Utility.swap(elements, 1, N--);
-            sink(elements, 1, N);
+            Utility.swap(elements, 1, N--, metrics);
+            sink(elements, 1, N, metrics);
+        }
+
+        metrics.end();
+    }
+
+    /**
+     * Heap sort the array in place with a 0-based binary heap, see {@link #sort(Comparable[], int, int, int)}.
+     */
+    static <E extends Comparable<E>> void sort(E[] elements) {
+        sort(elements, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, SortMetrics metrics) {
+        metrics.begin("Heap", elements.length);
+        sort(elements, 0, elements.length - 1, 2, metrics);
+        metrics.end();
+    }
+
+    /**
+     * Heap sort the sub array from lower bound to upper bound in place with a 0-based binary heap. This is the
+     * fallback Quick turns to when its recursion gets too deep.
+     *
+     * @param elements  array
+     * @param lo        lower bound (inclusive)
+     * @param hi        upper bound (inclusive)
+     * @param <E>       array element type
+     */
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi) {
+        sort(elements, lo, hi, 2, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi, SortMetrics metrics) {
+        sort(elements, lo, hi, 2, metrics);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi, int arity) {
+        sort(elements, lo, hi, arity, SortMetrics.NONE);
+    }
+
+    /**
+     * Heap sort the sub array from lower bound to upper bound in place, with a d-ary heap. Unlike
+     * {@link #sort(Comparable[], int)}, this heap is rooted at lo and indexed from 0 relative to it, so the children
+     * of node k are dk+1 to dk+d and no slot is wasted. A wider heap is shallower and keeps the children of a node
+     * next to each other in memory, at the price of d-1 compares to find the largest child.
+     *
+     * The sort down uses Floyd's bottom-up sink: the item moved to the root is one of the smallest, so instead of
+     * comparing it at every level on the way down, the hole is walked down to a leaf along the largest children, and
+     * the item then climbs back up the few levels to its place. For a binary heap that's about NlgN compares instead
+     * of 2NlgN.
+     *
+     * @param elements  array
+     * @param lo        lower bound (inclusive)
+     * @param hi        upper bound (inclusive)
+     * @param arity     number of children per node, at least 2
+     * @param metrics   where to report compares and moves
+     * @param <E>       array element type
+     */
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi, int arity, SortMetrics metrics) {
+        assert arity >= 2;
+
+        int n = hi - lo + 1;
+        if (n < 2)
+            return;
+
+        for (int k = (n - 2) / arity; k >= 0; k--)
+            sink(elements, lo, k, n, arity, metrics);
+
+        // the last few items left in the heap are the smallest ones, sort them in one go
+        while (n > SmallSort.CUTOFF) {
+            // the last leaf makes room for the max, and goes into the hole the max leaves at the root
+            E v = elements[lo + --n];
+            elements[lo + n] = elements[lo];
+            metrics.swap();
+            sinkBottomUp(elements, lo, v, n, arity, metrics);
         }
+        SmallSort.sort(elements, lo, lo + n - 1, metrics);
+    }
+
+    /**
+     * Sink for the d-ary heap rooted at lo, see {@link #sort(Comparable[], int, int, int, SortMetrics)}.
+     *
+     * @param elements  array
+     * @param lo        index of the heap root in the array
+     * @param k         the index of parent, index is 0-based and relative to lo.
+     * @param n         the size of the heap, at least 2
+     * @param d         the arity of the heap
+     * @param metrics   where to report compares and moves
+     * @param <E>       array element type
+     */
+    private static <E extends Comparable<E>> void sink(E[] elements, int lo, int k, int n, int d,
+                                                       SortMetrics metrics) {
+        E v = elements[lo + k];
+
+        for (int lastParent = (n - 2) / d; k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (Utility.compare(elements[lo + max], elements[lo + c], metrics) < 0)
+                    max = c;
+            }
+
+            if (Utility.compare(v, elements[lo + max], metrics) >= 0)
+                break;
+
+            elements[lo + k] = elements[lo + max];
+            metrics.copy(1);
+            k = max;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    /**
+     * Floyd's sink of v into the hole at the root of the d-ary heap rooted at lo.
+     *
+     * @param elements  array
+     * @param lo        index of the heap root in the array
+     * @param v         the item to place
+     * @param n         the size of the heap, at least 1
+     * @param d         the arity of the heap
+     * @param metrics   where to report compares and moves
+     * @param <E>       array element type
+     */
+    private static <E extends Comparable<E>> void sinkBottomUp(E[] elements, int lo, E v, int n, int d,
+                                                               SortMetrics metrics) {
+        int k = 0;
+
+        // walk the hole down to a leaf, moving the largest child up at every level
+        for (int lastParent = (n - 2) / d; n > 1 && k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (Utility.compare(elements[lo + max], elements[lo + c], metrics) < 0)
+                    max = c;
+            }
+
+            elements[lo + k] = elements[lo + max];
+            metrics.copy(1);
+            k = max;
+        }
+
+        // climb back up while v is larger than the parent of the hole
+        while (k > 0) {
+            int parent = (k - 1) / d;
+            if (Utility.compare(elements[lo + parent], v, metrics) >= 0)
+                break;
+
+            elements[lo + k] = elements[lo + parent];
+            metrics.copy(1);
+            k = parent;
+        }
+
+        elements[lo + k] = v;
     }
 
     /**
@@ -48,9 +214,10 @@ public class Heap {
      * @param elements  array
      * @param k         the index of parent, index is 1-based.
      * @param N         the size of the effective array
+     * @param metrics   where to report compares and swaps
      * @param <E>       array element type
      */
-    private static <E extends Comparable<E>> void sink(E[] elements, int k, int N) {
+    private static <E extends Comparable<E>> void sink(E[] elements, int k, int N, SortMetrics metrics) {
         assert k <= N && k > 0;
 
         while (true) {
@@ -58,15 +225,388 @@ public class Heap {
             if (candidate > N)
                 break;
 
-            if (right(k) <= N && elements[candidate].compareTo(elements[right(k)]) < 0)
+            if (right(k) <= N && Utility.compare(elements[candidate], elements[right(k)], metrics) < 0)
                 candidate = right(k);
 
-            if (elements[k].compareTo(elements[candidate]) > 0)
+            if (Utility.compare(elements[k], elements[candidate], metrics) > 0)
+                break;
+
+            Utility.swap(elements, k, candidate, metrics);
+            k = candidate;
+        }
+    }
+
+    /*
+     * Primitive versions, using the same 1-based layout. The sinking item is held aside and larger children are moved
+     * up into the hole, instead of being swapped level by level.
+     */
+
+    static void sort(int[] elements, int N) {
+        assert N == elements.length - 1;
+
+        for (int k = N / 2; k >= 1; k--)
+            sink(elements, k, N);
+
+        while (N > 1) {
+            Utility.swap(elements, 1, N--);
+            sink(elements, 1, N);
+        }
+    }
+
+    private static void sink(int[] elements, int k, int N) {
+        int v = elements[k];
+
+        while (left(k) <= N) {
+            int candidate = left(k);
+            if (candidate < N && elements[candidate] < elements[candidate + 1])
+                candidate++;
+
+            if (v >= elements[candidate])
+                break;
+
+            elements[k] = elements[candidate];
+            k = candidate;
+        }
+
+        elements[k] = v;
+    }
+
+    static void sort(long[] elements, int N) {
+        assert N == elements.length - 1;
+
+        for (int k = N / 2; k >= 1; k--)
+            sink(elements, k, N);
+
+        while (N > 1) {
+            Utility.swap(elements, 1, N--);
+            sink(elements, 1, N);
+        }
+    }
+
+    private static void sink(long[] elements, int k, int N) {
+        long v = elements[k];
+
+        while (left(k) <= N) {
+            int candidate = left(k);
+            if (candidate < N && elements[candidate] < elements[candidate + 1])
+                candidate++;
+
+            if (v >= elements[candidate])
+                break;
+
+            elements[k] = elements[candidate];
+            k = candidate;
+        }
+
+        elements[k] = v;
+    }
+
+    static void sort(double[] elements, int N) {
+        assert N == elements.length - 1;
+
+        for (int k = N / 2; k >= 1; k--)
+            sink(elements, k, N);
+
+        while (N > 1) {
+            Utility.swap(elements, 1, N--);
+            sink(elements, 1, N);
+        }
+    }
+
+    private static void sink(double[] elements, int k, int N) {
+        double v = elements[k];
+
+        while (left(k) <= N) {
+            int candidate = left(k);
+            if (candidate < N && Double.compare(elements[candidate], elements[candidate + 1]) < 0)
+                candidate++;
+
+            if (Double.compare(v, elements[candidate]) >= 0)
                 break;
 
-            Utility.swap(elements, k, candidate);
+            elements[k] = elements[candidate];
             k = candidate;
         }
+
+        elements[k] = v;
+    }
+
+    /*
+     * 0-based primitive versions, with the same d-ary layout and bottom-up sink. They default to an 8-ary heap: the
+     * children of a node then span one or two cache lines and the heap is a third as deep as a binary one, and for
+     * primitives the extra compares are cheaper than the cache misses saved. On 10M random ints that about halves the
+     * time of a binary heap.
+     */
+
+    static void sort(int[] elements) {
+        sort(elements, 0, elements.length - 1, PRIMITIVE_ARITY);
+    }
+
+    static void sort(int[] elements, int lo, int hi) {
+        sort(elements, lo, hi, PRIMITIVE_ARITY);
+    }
+
+    static void sort(int[] elements, int lo, int hi, int arity) {
+        assert arity >= 2;
+
+        int n = hi - lo + 1;
+        if (n < 2)
+            return;
+
+        for (int k = (n - 2) / arity; k >= 0; k--)
+            sink(elements, lo, k, n, arity);
+
+        while (n > SmallSort.CUTOFF) {
+            int v = elements[lo + --n];
+            elements[lo + n] = elements[lo];
+            sinkBottomUp(elements, lo, v, n, arity);
+        }
+        SmallSort.sort(elements, lo, lo + n - 1);
+    }
+
+    private static void sink(int[] elements, int lo, int k, int n, int d) {
+        int v = elements[lo + k];
+
+        for (int lastParent = (n - 2) / d; k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (elements[lo + max] < elements[lo + c])
+                    max = c;
+            }
+
+            if (v >= elements[lo + max])
+                break;
+
+            elements[lo + k] = elements[lo + max];
+            k = max;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    private static void sinkBottomUp(int[] elements, int lo, int v, int n, int d) {
+        int k = 0;
+
+        for (int lastParent = (n - 2) / d; n > 1 && k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (elements[lo + max] < elements[lo + c])
+                    max = c;
+            }
+
+            elements[lo + k] = elements[lo + max];
+            k = max;
+        }
+
+        while (k > 0) {
+            int parent = (k - 1) / d;
+            if (elements[lo + parent] >= v)
+                break;
+
+            elements[lo + k] = elements[lo + parent];
+            k = parent;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    static void sort(long[] elements) {
+        sort(elements, 0, elements.length - 1, PRIMITIVE_ARITY);
+    }
+
+    static void sort(long[] elements, int lo, int hi) {
+        sort(elements, lo, hi, PRIMITIVE_ARITY);
+    }
+
+    static void sort(long[] elements, int lo, int hi, int arity) {
+        assert arity >= 2;
+
+        int n = hi - lo + 1;
+        if (n < 2)
+            return;
+
+        for (int k = (n - 2) / arity; k >= 0; k--)
+            sink(elements, lo, k, n, arity);
+
+        while (n > SmallSort.CUTOFF) {
+            long v = elements[lo + --n];
+            elements[lo + n] = elements[lo];
+            sinkBottomUp(elements, lo, v, n, arity);
+        }
+        SmallSort.sort(elements, lo, lo + n - 1);
+    }
+
+    private static void sink(long[] elements, int lo, int k, int n, int d) {
+        long v = elements[lo + k];
+
+        for (int lastParent = (n - 2) / d; k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (elements[lo + max] < elements[lo + c])
+                    max = c;
+            }
+
+            if (v >= elements[lo + max])
+                break;
+
+            elements[lo + k] = elements[lo + max];
+            k = max;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    private static void sinkBottomUp(long[] elements, int lo, long v, int n, int d) {
+        int k = 0;
+
+        for (int lastParent = (n - 2) / d; n > 1 && k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (elements[lo + max] < elements[lo + c])
+                    max = c;
+            }
+
+            elements[lo + k] = elements[lo + max];
+            k = max;
+        }
+
+        while (k > 0) {
+            int parent = (k - 1) / d;
+            if (elements[lo + parent] >= v)
+                break;
+
+            elements[lo + k] = elements[lo + parent];
+            k = parent;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    static void sort(double[] elements) {
+        sort(elements, 0, elements.length - 1, PRIMITIVE_ARITY);
+    }
+
+    static void sort(double[] elements, int lo, int hi) {
+        sort(elements, lo, hi, PRIMITIVE_ARITY);
+    }
+
+    static void sort(double[] elements, int lo, int hi, int arity) {
+        assert arity >= 2;
+
+        int n = hi - lo + 1;
+        if (n < 2)
+            return;
+
+        for (int k = (n - 2) / arity; k >= 0; k--)
+            sink(elements, lo, k, n, arity);
+
+        while (n > SmallSort.CUTOFF) {
+            double v = elements[lo + --n];
+            elements[lo + n] = elements[lo];
+            sinkBottomUp(elements, lo, v, n, arity);
+        }
+        SmallSort.sort(elements, lo, lo + n - 1);
+    }
+
+    private static void sink(double[] elements, int lo, int k, int n, int d) {
+        double v = elements[lo + k];
+
+        for (int lastParent = (n - 2) / d; k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (Double.compare(elements[lo + max], elements[lo + c]) < 0)
+                    max = c;
+            }
+
+            if (Double.compare(v, elements[lo + max]) >= 0)
+                break;
+
+            elements[lo + k] = elements[lo + max];
+            k = max;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    private static void sinkBottomUp(double[] elements, int lo, double v, int n, int d) {
+        int k = 0;
+
+        for (int lastParent = (n - 2) / d; n > 1 && k <= lastParent; ) {
+            int child = d * k + 1, max = child, last = Math.min(child + d, n);
+            for (int c = child + 1; c < last; c++) {
+                if (Double.compare(elements[lo + max], elements[lo + c]) < 0)
+                    max = c;
+            }
+
+            elements[lo + k] = elements[lo + max];
+            k = max;
+        }
+
+        while (k > 0) {
+            int parent = (k - 1) / d;
+            if (Double.compare(elements[lo + parent], v) >= 0)
+                break;
+
+            elements[lo + k] = elements[lo + parent];
+            k = parent;
+        }
+
+        elements[lo + k] = v;
+    }
+
+    /**
+     * Same as {@link #sink(Comparable[], int, int, SortMetrics)}, but ordered by a comparator. The item the comparator
+     * considers the largest ends up at the root, so pass a reversed comparator to maintain a min heap.
+     *
+     * Public, along with {@link #swim(Object[], int, Comparator)}, so that the heaps of other packages can be built on
+     * them.
+     *
+     * @param elements      array
+     * @param k             the index of parent, index is 1-based.
+     * @param N             the size of the effective array
+     * @param comparator    the order of the heap
+     * @param <E>           array element type
+     */
+    public static <E> void sink(E[] elements, int k, int N, Comparator<? super E> comparator) {
+        assert k <= N && k > 0;
+
+        E v = elements[k];
+
+        while (left(k) <= N) {
+            int candidate = left(k);
+            if (candidate < N && comparator.compare(elements[candidate], elements[candidate + 1]) < 0)
+                candidate++;
+
+            if (comparator.compare(v, elements[candidate]) >= 0)
+                break;
+
+            elements[k] = elements[candidate];
+            k = candidate;
+        }
+
+        elements[k] = v;
+    }
+
+    /**
+     * Same as {@link #swim(Comparable[], int, int)}, but ordered by a comparator. The swimming item is held aside and
+     * smaller parents are moved down into the hole.
+     *
+     * @param elements      array
+     * @param k             the index of child, index is 1-based.
+     * @param comparator    the order of the heap
+     * @param <E>           array element type
+     */
+    public static <E> void swim(E[] elements, int k, Comparator<? super E> comparator) {
+        assert k > 0;
+
+        E v = elements[k];
+
+        while (k > 1 && comparator.compare(elements[parent(k)], v) < 0) {
+            elements[k] = elements[parent(k)];
+            k = parent(k);
+        }
+
+        elements[k] = v;
     }
 
     private static int left(int k) {
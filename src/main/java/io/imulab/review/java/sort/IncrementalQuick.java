@@ -0,0 +1,233 @@
+package io.imulab.review.java.sort;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A lazily sorted view of an array: incremental quick sort (Paredes and Navarro, 2006).
+ *
+ * Idea: to yield the next item, partition the range that holds it with {@link Quick}'s partition, then carry on into
+ * the left side only, until the range in front of the cursor is small enough for {@link SmallSort}. The pivots found
+ * on the way are kept on a stack, as everything to the left of a pivot is at most the pivot: once the cursor reaches
+ * a pivot, it is in place, and the next range to work on ends at the pivot below it on the stack. Ranges right of the
+ * cursor are never touched until the cursor gets there.
+ *
+ * Yielding the first k items costs O(N + klgk) on average, so reading the first few hundred items of a large array
+ * is about as cheap as selecting them. Reading all of them is just a quick sort. Like {@link Quick}, the range is heap
+ * sorted instead once the stack gets deeper than 2lgN.
+ *
+ * The array is sorted in place as the view advances, and must not be changed while it is in use. Not thread safe,
+ * though {@link #spliterator()} splits for parallel streams.
+ *
+ * @param <E>   type of array element
+ */
+public class IncrementalQuick<E extends Comparable<E>> implements Iterator<E> {
+
+    private final E[] elements;
+
+    /**
+     * The index of the next item to yield.
+     */
+    private int cursor;
+
+    /**
+     * a[cursor..sorted-1] are in place already.
+     */
+    private int sorted;
+
+    /**
+     * Pivot positions, decreasing from the bottom, which is the end of the view (exclusive). All items left of a
+     * pivot are at most the pivot, and all items right of it are at least the pivot.
+     */
+    private final int[] stack;
+    private int size;
+
+    /**
+     * @param elements  array to be sorted lazily
+     */
+    public IncrementalQuick(E[] elements) {
+        // once the stack is full, the range in front of the cursor is heap sorted
+        this(elements, 0, 0, elements.length, Quick.depthLimit(elements.length) + 1);
+    }
+
+    private IncrementalQuick(E[] elements, int cursor, int sorted, int end, int depth) {
+        this.elements = elements;
+        this.cursor = cursor;
+        this.sorted = sorted;
+        this.stack = new int[depth];
+        this.stack[size++] = end;
+    }
+
+    public static <E extends Comparable<E>> IncrementalQuick<E> of(E[] elements) {
+        return new IncrementalQuick<>(elements);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < stack[0];
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        if (cursor == sorted)
+            settle();
+        return elements[cursor++];
+    }
+
+    /**
+     * @return  the number of items not yet yielded.
+     */
+    public int remaining() {
+        return stack[0] - cursor;
+    }
+
+    /**
+     * @return  a spliterator over the items not yet yielded, in order. It advances this view.
+     */
+    public Spliterator<E> spliterator() {
+        return new SortedSpliterator<>(this);
+    }
+
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Put the item at the cursor, and maybe some after it, in place.
+     */
+    private void settle() {
+        int top = stack[size - 1];
+
+        // partition the range in front of the cursor, keeping the left side, until it is small
+        while (top - cursor > SmallSort.CUTOFF && size < stack.length) {
+            top = Quick.partition(elements, cursor, top - 1, SortMetrics.NONE);
+            stack[size++] = top;
+        }
+
+        if (top == cursor) {
+            // the cursor reached a pivot, the next range ends at the pivot below it
+            size--;
+            sorted = cursor + 1;
+        } else if (top - cursor > SmallSort.CUTOFF) {
+            Heap.sort(elements, cursor, top - 1, SortMetrics.NONE);
+            sorted = top;
+        } else {
+            SmallSort.sort(elements, cursor, top - 1, SortMetrics.NONE);
+            sorted = top;
+        }
+    }
+
+    /**
+     * Split off the items up to a pivot near the middle of what is left, which come before all the other items. If no
+     * pivot has been found yet, partition once to get one.
+     *
+     * @return  a view of the first items, which this view gives up, or null if there are too few items to split.
+     */
+    private IncrementalQuick<E> trySplit() {
+        int end = stack[0];
+        if (end - sorted <= SmallSort.CUTOFF)
+            return null;
+
+        if (size == 1)
+            stack[size++] = Quick.partition(elements, sorted, end - 1, SortMetrics.NONE);
+
+        // the pivot closest to the middle, leaving at least one item on the left
+        int mid = (cursor + end) >>> 1, best = -1;
+        for (int i = 1; i < size; i++) {
+            if (stack[i] > cursor && (best < 0 || Math.abs(stack[i] - mid) < Math.abs(stack[best] - mid)))
+                best = i;
+        }
+        if (best < 0)
+            return null;
+
+        int pivot = stack[best];
+        IncrementalQuick<E> prefix = new IncrementalQuick<>(elements, cursor, sorted, pivot, stack.length);
+        for (int i = best + 1; i < size; i++)
+            prefix.stack[prefix.size++] = stack[i];
+
+        // this view now starts at the pivot, which is in place
+        cursor = pivot;
+        sorted = pivot;
+        size = best + 1;
+        return prefix;
+    }
+
+    /**
+     * Yields the items of a view in order. Splits hand off the items up to a pivot.
+     */
+    private static final class SortedSpliterator<E extends Comparable<E>> implements Spliterator<E> {
+
+        private final IncrementalQuick<E> view;
+
+        SortedSpliterator(IncrementalQuick<E> view) {
+            this.view = view;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (!view.hasNext())
+                return false;
+
+            action.accept(view.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            IncrementalQuick<E> prefix = view.trySplit();
+            return (prefix == null) ? null : new SortedSpliterator<>(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return view.remaining();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED;
+        }
+
+        /**
+         * @return  null, as the items are in their natural order.
+         */
+        @Override
+        public Comparator<? super E> getComparator() {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("Duplicates")
+    public static void main(String[] args) {
+        Integer[] array = Utility.randomIntArray(32);
+
+        System.out.println("Before:");
+        Utility.printArray(array);
+
+        IncrementalQuick<Integer> view = of(array);
+        System.out.print("Smallest 5:");
+        for (int i = 0; i < 5; i++)
+            System.out.print(" " + view.next());
+        System.out.println();
+
+        System.out.println("Array after 5:");
+        Utility.printArray(array);
+
+        // the first 100 of a million, in order, through a stream
+        Integer[] large = Utility.randomIntArray(1_000_000);
+        Integer[] first = of(large).stream().limit(100).toArray(Integer[]::new);
+        assert Utility.isSorted(first);
+
+        // a parallel stream over all of it yields everything in order
+        Integer[] all = StreamSupport.stream(of(large).spliterator(), true).toArray(Integer[]::new);
+        assert Utility.isSorted(all) && all.length == large.length;
+    }
+}
@@ -16,16 +16,85 @@ package io.imulab.review.java.sort;
 public class Insertion {
 
     static <E extends Comparable<E>> void sort(E[] elements) {
-        for (int i = 0; i < elements.length; i++)
-            insert(elements, i);
+        sort(elements, SortMetrics.NONE);
     }
 
-    private static <E extends Comparable<E>> void insert(E[] elements, int c) {
-        assert c > 0;
+    static <E extends Comparable<E>> void sort(E[] elements, SortMetrics metrics) {
+        metrics.begin("Insertion", elements.length);
+        sort(elements, 0, elements.length - 1, metrics);
+        metrics.end();
+    }
+
+    /**
+     * Sort the sub array from lower bound to upper bound. Used by the recursive sorts to finish off small sub arrays.
+     *
+     * @param elements  array
+     * @param lo        lower bound (inclusive)
+     * @param hi        upper bound (inclusive)
+     * @param <E>       type of array element
+     */
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi) {
+        sort(elements, lo, hi, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi, SortMetrics metrics) {
+        for (int i = lo + 1; i <= hi; i++)
+            insert(elements, lo, i, metrics);
+    }
+
+    /*
+     * Primitive versions. Instead of swapping adjacent items, the cursor item is held aside and larger items are
+     * shifted one slot to the right, which halves the number of array writes.
+     */
+
+    static void sort(int[] elements) {
+        sort(elements, 0, elements.length - 1);
+    }
+
+    static void sort(int[] elements, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            int v = elements[i];
+            int j = i;
+            for (; j > lo && elements[j - 1] > v; j--)
+                elements[j] = elements[j - 1];
+            elements[j] = v;
+        }
+    }
+
+    static void sort(long[] elements) {
+        sort(elements, 0, elements.length - 1);
+    }
+
+    static void sort(long[] elements, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            long v = elements[i];
+            int j = i;
+            for (; j > lo && elements[j - 1] > v; j--)
+                elements[j] = elements[j - 1];
+            elements[j] = v;
+        }
+    }
+
+    static void sort(double[] elements) {
+        sort(elements, 0, elements.length - 1);
+    }
+
+    static void sort(double[] elements, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            double v = elements[i];
+            int j = i;
+            for (; j > lo && Double.compare(elements[j - 1], v) > 0; j--)
+                elements[j] = elements[j - 1];
+            elements[j] = v;
+        }
+    }
+
+    private static <E extends Comparable<E>> void insert(E[] elements, int lo, int c, SortMetrics metrics) {
+        assert c > lo;
         assert c < elements.length;
 
-        for (int i = c; i > 0 && elements[i-1].compareTo(elements[i]) > 0; i--) {
-            Utility.swap(elements, i-1, i);
+        for (int i = c; i > lo && Utility.compare(elements[i-1], elements[i], metrics) > 0; i--) {
+            Utility.swap(elements, i-1, i, metrics);
         }
     }
 
@@ -1,29 +1,102 @@
 package io.imulab.review.java.sort;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Merge sort. Recursively divide the array into two halves until we reach sub array of size 1. Then merge two sorted
- * sub array together.
+ * sub array together. In practice the division stops at sub arrays of {@link SmallSort#CUTOFF} items, which
+ * {@link SmallSort} sorts directly (stably, for objects).
  *
  * Merge sort is optimal in terms of compare time.
  *
- * Time complexity is O(NlgN), Space complexity is O(N) due to the need of an auxiliary array in assisting merge.
+ * Time complexity is O(NlgN), Space complexity is O(N) due to the need of an auxiliary array in assisting merge. The
+ * overloads taking the aux array allocate nothing, and for objects get by with N/2 extra space, by copying out only the
+ * shorter run of each merge. {@link SortSession} keeps such arrays around for repeated sorts.
+ *
+ * The parallel variant forks the two recursive halves as fork/join tasks, and splits the large merges near the top of
+ * the recursion in turn, so that all workers stay busy until the very last merge. Both variants are stable.
  */
 public class Merge {
 
+    /**
+     * Sub arrays (and merges) smaller than this are handled sequentially by the parallel sort.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
     static <E extends Comparable<E>> void sort(E[] elements) {
+        sort(elements, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, SortMetrics metrics) {
+        metrics.begin("Merge", elements.length);
         Comparable[] aux = new Comparable[elements.length];
-        sort(elements, (E[]) aux, 0, elements.length - 1);
+        sort(elements, (E[]) aux, 0, elements.length - 1, 0, metrics);
+        metrics.end();
     }
 
     static <E extends Comparable<E>> void bottomUpSort(E[] elements) {
+        bottomUpSort(elements, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void bottomUpSort(E[] elements, SortMetrics metrics) {
+        metrics.begin("MergeBottomUp", elements.length);
         Comparable[] aux = new Comparable[elements.length];
 
+        // start from sorted runs of the small sort cutoff
+        for (int low = 0; low < elements.length; low += SmallSort.CUTOFF)
+            SmallSort.sort(elements, low, Math.min(low + SmallSort.CUTOFF - 1, elements.length - 1), metrics);
+
         // double the sub array size every time, executes logN times
-        for (int sz = 1; sz < elements.length; sz += sz)
+        for (int sz = SmallSort.CUTOFF; sz < elements.length; sz += sz)
             // for every size * 2 segment, perform merge
             for (int low = 0; low + sz < elements.length; low += sz * 2)
                 // do a Math.min on upper bound in case we overflow
-                merge(elements, (E[]) aux, low, low + sz - 1, Math.min(low + sz * 2 - 1, elements.length - 1));
+                merge(elements, (E[]) aux, low, low + sz - 1, Math.min(low + sz * 2 - 1, elements.length - 1),
+                        metrics);
+
+        metrics.end();
+    }
+
+    /**
+     * Sort with a caller supplied aux array, which only needs to hold N/2 items: each merge copies out just the
+     * shorter of its two runs, see {@link #halfMerge(Comparable[], Comparable[], int, int, int)}. Nothing is
+     * allocated, so repeated sorts can share one aux array. Merges are skipped when the halves are already in order.
+     *
+     * @param elements  array to sort
+     * @param aux       scratch space of at least N/2 items, whose contents are overwritten
+     * @param <E>       type of array element
+     */
+    static <E extends Comparable<E>> void sort(E[] elements, E[] aux) {
+        assert aux.length >= elements.length / 2;
+        halfBufferSort(elements, aux, 0, elements.length - 1);
+    }
+
+    /**
+     * Bottom up sort with a caller supplied aux array of at least N/2 items, as in {@link #sort(Comparable[],
+     * Comparable[])}.
+     */
+    static <E extends Comparable<E>> void bottomUpSort(E[] elements, E[] aux) {
+        assert aux.length >= elements.length / 2;
+
+        int n = elements.length;
+        for (int low = 0; low < n; low += SmallSort.CUTOFF)
+            SmallSort.sort(elements, low, Math.min(low + SmallSort.CUTOFF - 1, n - 1), SortMetrics.NONE);
+
+        for (int sz = SmallSort.CUTOFF; sz < n; sz += sz) {
+            for (int low = 0; low + sz < n; low += sz * 2) {
+                int mid = low + sz - 1;
+                if (elements[mid].compareTo(elements[mid + 1]) > 0)
+                    halfMerge(elements, aux, low, mid, Math.min(low + sz * 2 - 1, n - 1));
+            }
+        }
+    }
+
+    /**
+     * Stable sort of a[lo..hi], with aux[lo..hi] as scratch space.
+     */
+    static <E extends Comparable<E>> void sort(E[] a, E[] aux, int lo, int hi) {
+        sort(a, aux, lo, hi, 0, SortMetrics.NONE);
     }
 
     /**
@@ -33,15 +106,20 @@ public class Merge {
      * @param aux   auxiliary array assisting sort
      * @param lo    lower bound (inclusive)
      * @param hi    upper bound (inclusive)
+     * @param level recursion level of this call, the top level being 0
+     * @param m     where to report compares, copies and levels
      * @param <E>   type of array element
      */
-    private static <E extends Comparable<E>> void sort(E[] a, E[] aux, int lo, int hi) {
-        if (hi <= lo)
+    private static <E extends Comparable<E>> void sort(E[] a, E[] aux, int lo, int hi, int level, SortMetrics m) {
+        if (hi - lo < SmallSort.CUTOFF) {
+            SmallSort.sort(a, lo, hi, m);
             return;
-        int mid = (hi + lo) / 2;
-        sort(a, aux, lo, mid);
-        sort(a, aux, mid + 1, hi);
-        merge(a, aux, lo, mid, hi);
+        }
+        m.enter(level);
+        int mid = (hi + lo) >>> 1;
+        sort(a, aux, lo, mid, level + 1, m);
+        sort(a, aux, mid + 1, hi, level + 1, m);
+        merge(a, aux, lo, mid, hi, m);
     }
 
     /**
@@ -52,14 +130,16 @@ public class Merge {
      * @param lo    lower bound (inclusive)
      * @param mid   middle index, which is the last index of the first sub array
      * @param hi    upper bound (inclusive)
+     * @param m     where to report compares and copies
      * @param <E>   type of the element
      */
-    private static <E extends Comparable<E>> void merge(E[] a, E[] aux, int lo, int mid, int hi) {
+    private static <E extends Comparable<E>> void merge(E[] a, E[] aux, int lo, int mid, int hi, SortMetrics m) {
         assert Utility.isSorted(a, lo, mid + 1);
         assert Utility.isSorted(a, mid + 1, hi + 1);
 
-        // copy to aux
+        // copy to aux, every item is then copied back once
         if (hi + 1 - lo >= 0) System.arraycopy(a, lo, aux, lo, hi + 1 - lo);
+        m.copy(2 * (hi + 1 - lo));
 
         // merge
         int i = lo, j = mid + 1;
@@ -68,13 +148,342 @@ public class Merge {
                 a[k] = aux[j++];
             else if (j > hi)
                 a[k] = aux[i++];
-            else if (aux[i].compareTo(aux[j]) < 0)
+            // only take from the right when strictly less, so that equal items keep their order
+            else if (Utility.compare(aux[j], aux[i], m) < 0)
+                a[k] = aux[j++];
+            else
                 a[k] = aux[i++];
+        }
+
+        assert Utility.isSorted(a, lo, hi + 1);
+    }
+
+    private static <E extends Comparable<E>> void halfBufferSort(E[] a, E[] aux, int lo, int hi) {
+        if (hi - lo < SmallSort.CUTOFF) {
+            SmallSort.sort(a, lo, hi, SortMetrics.NONE);
+            return;
+        }
+        int mid = (hi + lo) >>> 1;
+        halfBufferSort(a, aux, lo, mid);
+        halfBufferSort(a, aux, mid + 1, hi);
+
+        // already in order, skip the merge
+        if (a[mid].compareTo(a[mid + 1]) <= 0)
+            return;
+
+        halfMerge(a, aux, lo, mid, hi);
+    }
+
+    /**
+     * Merge a[lo..mid] and a[mid+1..hi], copying only the shorter run out to aux[0..].
+     *
+     * If the left run is copied, merge front to back: the output never catches up with the right run items not yet
+     * taken, as there are still left run items in aux to place before them. If the right run is copied, merge back to
+     * front instead, for the same reason. Either way, ties go to the left run, so the merge is stable, and the items
+     * of the longer run still left once the shorter one runs out are in place already.
+     */
+    private static <E extends Comparable<E>> void halfMerge(E[] a, E[] aux, int lo, int mid, int hi) {
+        int n1 = mid - lo + 1, n2 = hi - mid;
+
+        if (n1 <= n2) {
+            System.arraycopy(a, lo, aux, 0, n1);
+            int i = 0, j = mid + 1, k = lo;
+            while (i < n1 && j <= hi)
+                a[k++] = (a[j].compareTo(aux[i]) < 0) ? a[j++] : aux[i++];
+            System.arraycopy(aux, i, a, k, n1 - i);
+        } else {
+            System.arraycopy(a, mid + 1, aux, 0, n2);
+            int i = mid, j = n2 - 1, k = hi;
+            while (i >= lo && j >= 0)
+                a[k--] = (aux[j].compareTo(a[i]) < 0) ? a[i--] : aux[j--];
+            System.arraycopy(aux, 0, a, lo, j + 1);
+        }
+
+        assert Utility.isSorted(a, lo, hi + 1);
+    }
+
+    static <E extends Comparable<E>> void parallelSort(E[] elements) {
+        parallelSort(elements, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sort the array on the fork/join pool.
+     *
+     * @param elements  array to sort
+     * @param threshold sub arrays and merges of at most this many items are not split further
+     * @param pool      the pool to run the tasks on
+     * @param <E>       type of array element
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Comparable<E>> void parallelSort(E[] elements, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            sort(elements);
+            return;
+        }
+
+        Comparable[] aux = new Comparable[elements.length];
+        pool.invoke(new SortTask<>(elements, (E[]) aux, 0, elements.length - 1, threshold));
+    }
+
+    /**
+     * Sorts a[lo..hi] in place. Each task only touches its own range of a and aux, so tasks share both arrays.
+     */
+    private static class SortTask<E extends Comparable<E>> extends RecursiveAction {
+
+        private final E[] a, aux;
+        private final int lo, hi, threshold;
+
+        SortTask(E[] a, E[] aux, int lo, int hi, int threshold) {
+            this.a = a;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < threshold) {
+                sort(a, aux, lo, hi, 0, SortMetrics.NONE);
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SortTask<>(a, aux, lo, mid, threshold), new SortTask<>(a, aux, mid + 1, hi, threshold));
+
+            // halves are already in order
+            if (a[mid].compareTo(a[mid + 1]) <= 0)
+                return;
+
+            System.arraycopy(a, lo, aux, lo, hi + 1 - lo);
+            new MergeTask<>(aux, lo, mid, mid + 1, hi, a, lo, threshold).compute();
+        }
+    }
+
+    /**
+     * Merges the sorted runs src[lo1..hi1] and src[lo2..hi2] into dst, starting at index d.
+     *
+     * Large merges are split by taking the middle item of the longer run and binary searching its place in the other
+     * run. That item's final position is then known, and the two merges on either side of it are independent. Ties
+     * are broken in favour of the first run, which keeps the merge stable.
+     */
+    private static class MergeTask<E extends Comparable<E>> extends RecursiveAction {
+
+        private final E[] src, dst;
+        private final int lo1, hi1, lo2, hi2, d, threshold;
+
+        MergeTask(E[] src, int lo1, int hi1, int lo2, int hi2, E[] dst, int d, int threshold) {
+            this.src = src;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.dst = dst;
+            this.d = d;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int n1 = hi1 - lo1 + 1, n2 = hi2 - lo2 + 1;
+
+            if (n1 + n2 <= threshold) {
+                merge();
+                return;
+            }
+
+            MergeTask<E> left, right;
+            if (n1 >= n2) {
+                // items of the second run equal to x go after x
+                int m = (lo1 + hi1) >>> 1;
+                int j = lowerBound(src, lo2, hi2 + 1, src[m]);
+                int p = d + (m - lo1) + (j - lo2);
+                dst[p] = src[m];
+                left = new MergeTask<>(src, lo1, m - 1, lo2, j - 1, dst, d, threshold);
+                right = new MergeTask<>(src, m + 1, hi1, j, hi2, dst, p + 1, threshold);
+            } else {
+                // items of the first run equal to y go before y
+                int m = (lo2 + hi2) >>> 1;
+                int i = upperBound(src, lo1, hi1 + 1, src[m]);
+                int p = d + (i - lo1) + (m - lo2);
+                dst[p] = src[m];
+                left = new MergeTask<>(src, lo1, i - 1, lo2, m - 1, dst, d, threshold);
+                right = new MergeTask<>(src, i, hi1, m + 1, hi2, dst, p + 1, threshold);
+            }
+
+            invokeAll(left, right);
+        }
+
+        private void merge() {
+            int i = lo1, j = lo2, k = d;
+            while (i <= hi1 && j <= hi2)
+                dst[k++] = (src[j].compareTo(src[i]) < 0) ? src[j++] : src[i++];
+            while (i <= hi1)
+                dst[k++] = src[i++];
+            while (j <= hi2)
+                dst[k++] = src[j++];
+        }
+    }
+
+    /**
+     * @return  the first index in a[lo, hi) whose item is not less than key, or hi if there is none.
+     */
+    static <E extends Comparable<E>> int lowerBound(E[] a, int lo, int hi, E key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid].compareTo(key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return  the first index in a[lo, hi) whose item is greater than key, or hi if there is none.
+     */
+    static <E extends Comparable<E>> int upperBound(E[] a, int lo, int hi, E key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid].compareTo(key) <= 0)
+                lo = mid + 1;
             else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /*
+     * Primitive versions. Besides avoiding boxing, these skip the merge entirely when the two halves are already in
+     * order, which makes sorted input linear.
+     */
+
+    static void sort(int[] elements) {
+        sort(elements, new int[elements.length], 0, elements.length - 1);
+    }
+
+    /**
+     * Sort with a caller supplied aux array of at least N items, so that repeated sorts can share it.
+     */
+    static void sort(int[] elements, int[] aux) {
+        assert aux.length >= elements.length;
+        sort(elements, aux, 0, elements.length - 1);
+    }
+
+    private static void sort(int[] a, int[] aux, int lo, int hi) {
+        if (hi - lo < SmallSort.CUTOFF) {
+            SmallSort.sort(a, lo, hi);
+            return;
+        }
+        int mid = (hi + lo) >>> 1;
+        sort(a, aux, lo, mid);
+        sort(a, aux, mid + 1, hi);
+
+        // already in order, skip the merge
+        if (a[mid] <= a[mid + 1])
+            return;
+
+        merge(a, aux, lo, mid, hi);
+    }
+
+    private static void merge(int[] a, int[] aux, int lo, int mid, int hi) {
+        System.arraycopy(a, lo, aux, lo, hi + 1 - lo);
+
+        int i = lo, j = mid + 1;
+        for (int k = lo; k <= hi; k++) {
+            if (i > mid)
+                a[k] = aux[j++];
+            else if (j > hi)
+                a[k] = aux[i++];
+            else if (aux[j] < aux[i])
                 a[k] = aux[j++];
+            else
+                a[k] = aux[i++];
         }
+    }
 
-        assert Utility.isSorted(a, lo, mid + 1);
+    static void sort(long[] elements) {
+        sort(elements, new long[elements.length], 0, elements.length - 1);
+    }
+
+    static void sort(long[] elements, long[] aux) {
+        assert aux.length >= elements.length;
+        sort(elements, aux, 0, elements.length - 1);
+    }
+
+    private static void sort(long[] a, long[] aux, int lo, int hi) {
+        if (hi - lo < SmallSort.CUTOFF) {
+            SmallSort.sort(a, lo, hi);
+            return;
+        }
+        int mid = (hi + lo) >>> 1;
+        sort(a, aux, lo, mid);
+        sort(a, aux, mid + 1, hi);
+
+        // already in order, skip the merge
+        if (a[mid] <= a[mid + 1])
+            return;
+
+        merge(a, aux, lo, mid, hi);
+    }
+
+    private static void merge(long[] a, long[] aux, int lo, int mid, int hi) {
+        System.arraycopy(a, lo, aux, lo, hi + 1 - lo);
+
+        int i = lo, j = mid + 1;
+        for (int k = lo; k <= hi; k++) {
+            if (i > mid)
+                a[k] = aux[j++];
+            else if (j > hi)
+                a[k] = aux[i++];
+            else if (aux[j] < aux[i])
+                a[k] = aux[j++];
+            else
+                a[k] = aux[i++];
+        }
+    }
+
+    static void sort(double[] elements) {
+        sort(elements, new double[elements.length], 0, elements.length - 1);
+    }
+
+    static void sort(double[] elements, double[] aux) {
+        assert aux.length >= elements.length;
+        sort(elements, aux, 0, elements.length - 1);
+    }
+
+    private static void sort(double[] a, double[] aux, int lo, int hi) {
+        if (hi - lo < SmallSort.CUTOFF) {
+            SmallSort.sort(a, lo, hi);
+            return;
+        }
+        int mid = (hi + lo) >>> 1;
+        sort(a, aux, lo, mid);
+        sort(a, aux, mid + 1, hi);
+
+        // already in order, skip the merge
+        if (Double.compare(a[mid], a[mid + 1]) <= 0)
+            return;
+
+        merge(a, aux, lo, mid, hi);
+    }
+
+    private static void merge(double[] a, double[] aux, int lo, int mid, int hi) {
+        System.arraycopy(a, lo, aux, lo, hi + 1 - lo);
+
+        int i = lo, j = mid + 1;
+        for (int k = lo; k <= hi; k++) {
+            if (i > mid)
+                a[k] = aux[j++];
+            else if (j > hi)
+                a[k] = aux[i++];
+            else if (Double.compare(aux[j], aux[i]) < 0)
+                a[k] = aux[j++];
+            else
+                a[k] = aux[i++];
+        }
     }
 
     @SuppressWarnings("Duplicates")
@@ -0,0 +1,284 @@
+package io.imulab.review.java.sort;
+
+/**
+ * Natural merge sort. An adaptive take on {@link Merge#bottomUpSort(Comparable[])}: instead of merging sub arrays of
+ * size 1, 2, 4, ... no matter what the input looks like, scan the array for runs that are already in order, and merge
+ * those.
+ *
+ * A run is the longest stretch from where the scan is that is ascending, or strictly descending, in which case it is
+ * reversed in place (strictly, so that reversing keeps equal items in order). Runs shorter than {@link #MIN_RUN} are
+ * extended to it with {@link SmallSort}, whose insertion sort costs one compare an item for the part already in order.
+ *
+ * Which runs to merge when follows powersort (Munro and Wild, 2018): the boundary between two neighbouring runs gets
+ * the depth at which the midpoints of the two runs part ways in the perfectly balanced merge tree over the array, its
+ * power. Runs are pushed on a stack, and a run is merged with the one below it while the boundary between those is
+ * deeper than the boundary to the next run. The powers on the stack keep increasing, so it holds at most 31 runs, and
+ * the merges come out nearly as balanced as the runs allow.
+ *
+ * Merges are the half buffer merges of {@link Merge#sort(Comparable[], Comparable[])}, copying out only the shorter
+ * run, after skipping the head of the left run and the tail of the right run that are in place already. When one run
+ * wins {@link #GALLOP} times in a row, the merge looks for how far its streak goes with an exponential search, and
+ * moves all of it in one block copy.
+ *
+ * Input made of a few runs sorts in O(N), random input in O(NlgN). This sort is stable.
+ */
+public class NaturalMerge {
+
+    /**
+     * Runs shorter than this are extended to it, the last run to the end of the array.
+     */
+    static final int MIN_RUN = 32;
+
+    /**
+     * Wins in a row by one run after which a merge searches for the end of the streak.
+     */
+    static final int GALLOP = 7;
+
+    /**
+     * Powers are in [1, 31] and strictly increase up the stack.
+     */
+    private static final int MAX_STACK = 32;
+
+    static <E extends Comparable<E>> void sort(E[] elements) {
+        int n = elements.length;
+        if (n < 2 || nextRun(elements, 0, n) == n)
+            return;
+
+        @SuppressWarnings("unchecked")
+        E[] aux = (E[]) new Comparable[n / 2];
+        sort(elements, aux);
+    }
+
+    /**
+     * Sort with a caller supplied aux array, which only needs to hold N/2 items, as in
+     * {@link Merge#sort(Comparable[], Comparable[])}.
+     *
+     * @param elements  array to sort
+     * @param aux       scratch space of at least N/2 items, whose contents are overwritten
+     * @param <E>       type of array element
+     */
+    static <E extends Comparable<E>> void sort(E[] elements, E[] aux) {
+        assert aux.length >= elements.length / 2;
+
+        int n = elements.length;
+        if (n < 2)
+            return;
+
+        // the stack holds runs [starts[i], starts[i+1]), the last one ending where the current run starts, and the
+        // power of the boundary to the run above each
+        int[] starts = new int[MAX_STACK], powers = new int[MAX_STACK];
+        int top = 0;
+
+        int start = 0, end = nextRun(elements, 0, n);
+        while (end < n) {
+            int next = nextRun(elements, end, n);
+            int power = power(start, end, next, n);
+
+            while (top > 0 && powers[top - 1] > power) {
+                merge(elements, aux, starts[top - 1], start - 1, end - 1);
+                start = starts[--top];
+            }
+            starts[top] = start;
+            powers[top] = power;
+            top++;
+
+            start = end;
+            end = next;
+        }
+
+        while (top > 0) {
+            merge(elements, aux, starts[top - 1], start - 1, n - 1);
+            start = starts[--top];
+        }
+
+        assert Utility.isSorted(elements);
+    }
+
+    /**
+     * Find the run starting at lo, reversing it if it is strictly descending, and extend it to {@link #MIN_RUN} items
+     * if it is shorter.
+     *
+     * @param a     array
+     * @param lo    start of the run (inclusive)
+     * @param n     end of the array (exclusive)
+     * @return      the end of the run (exclusive)
+     */
+    private static <E extends Comparable<E>> int nextRun(E[] a, int lo, int n) {
+        int hi = Math.min(n, lo + 2);
+        if (hi - lo == 2 && a[lo + 1].compareTo(a[lo]) < 0) {
+            while (hi < n && a[hi].compareTo(a[hi - 1]) < 0)
+                hi++;
+            for (int i = lo, j = hi - 1; i < j; i++, j--)
+                Utility.swap(a, i, j);
+        } else {
+            while (hi < n && a[hi].compareTo(a[hi - 1]) >= 0)
+                hi++;
+        }
+
+        if (hi - lo < MIN_RUN) {
+            hi = Math.min(n, lo + MIN_RUN);
+            SmallSort.sort(a, lo, hi - 1, SortMetrics.NONE);
+        }
+        return hi;
+    }
+
+    /**
+     * The power of the boundary between the runs [start1, start2) and [start2, end2) of an array of n items: one more
+     * than the number of leading bits that the midpoints of the two runs, as fractions of n, have in common.
+     */
+    private static int power(int start1, int start2, int end2, int n) {
+        // twice the midpoints, scaled by 2^31 / 2n, which keeps them below 2^31
+        long twice1 = (long) start1 + start2, twice2 = (long) start2 + end2;
+        int a = (int) ((twice1 << 31) / (2L * n));
+        int b = (int) ((twice2 << 31) / (2L * n));
+        return Integer.numberOfLeadingZeros(a ^ b);
+    }
+
+    /**
+     * Merge the two sorted runs a[lo..mid] and a[mid+1..hi].
+     */
+    private static <E extends Comparable<E>> void merge(E[] a, E[] aux, int lo, int mid, int hi) {
+        // the items of the left run up to the first of the right run, and the items of the right run from the last of
+        // the left run on, are in place already
+        lo = gallopForward(a, lo, mid + 1, a[mid + 1], true);
+        if (lo > mid)
+            return;
+        hi = gallopBackward(a, mid + 1, hi + 1, a[mid], false) - 1;
+
+        if (mid - lo <= hi - mid - 1)
+            mergeForward(a, aux, lo, mid, hi);
+        else
+            mergeBackward(a, aux, lo, mid, hi);
+
+        assert Utility.isSorted(a, lo, hi + 1);
+    }
+
+    /**
+     * Merge front to back, with the left run, the shorter one, copied out to aux[0..]. Ties go to the left run.
+     */
+    private static <E extends Comparable<E>> void mergeForward(E[] a, E[] aux, int lo, int mid, int hi) {
+        int n1 = mid - lo + 1;
+        System.arraycopy(a, lo, aux, 0, n1);
+
+        int i = 0, j = mid + 1, k = lo;
+        int leftWins = 0, rightWins = 0;
+        while (i < n1 && j <= hi) {
+            if (a[j].compareTo(aux[i]) < 0) {
+                a[k++] = a[j++];
+                leftWins = 0;
+                if (++rightWins >= GALLOP && j <= hi) {
+                    // the right run items less than the next left one all go next
+                    int end = gallopForward(a, j, hi + 1, aux[i], false);
+                    System.arraycopy(a, j, a, k, end - j);
+                    k += end - j;
+                    j = end;
+                    rightWins = 0;
+                }
+            } else {
+                a[k++] = aux[i++];
+                rightWins = 0;
+                if (++leftWins >= GALLOP && i < n1) {
+                    // the left run items not greater than the next right one all go next
+                    int end = gallopForward(aux, i, n1, a[j], true);
+                    System.arraycopy(aux, i, a, k, end - i);
+                    k += end - i;
+                    i = end;
+                    leftWins = 0;
+                }
+            }
+        }
+
+        // what is left of the right run is in place already
+        System.arraycopy(aux, i, a, k, n1 - i);
+    }
+
+    /**
+     * Merge back to front, with the right run, the shorter one, copied out to aux[0..]. Ties go to the left run.
+     */
+    private static <E extends Comparable<E>> void mergeBackward(E[] a, E[] aux, int lo, int mid, int hi) {
+        int n2 = hi - mid;
+        System.arraycopy(a, mid + 1, aux, 0, n2);
+
+        int i = mid, j = n2 - 1, k = hi;
+        int leftWins = 0, rightWins = 0;
+        while (i >= lo && j >= 0) {
+            if (aux[j].compareTo(a[i]) < 0) {
+                a[k--] = a[i--];
+                rightWins = 0;
+                if (++leftWins >= GALLOP && i >= lo) {
+                    // the left run items greater than the next right one all go next
+                    int start = gallopBackward(a, lo, i + 1, aux[j], true);
+                    k -= i + 1 - start;
+                    System.arraycopy(a, start, a, k + 1, i + 1 - start);
+                    i = start - 1;
+                    leftWins = 0;
+                }
+            } else {
+                a[k--] = aux[j--];
+                leftWins = 0;
+                if (++rightWins >= GALLOP && j >= 0) {
+                    // the right run items not less than the next left one all go next
+                    int start = gallopBackward(aux, 0, j + 1, a[i], false);
+                    k -= j + 1 - start;
+                    System.arraycopy(aux, start, a, k + 1, j + 1 - start);
+                    j = start - 1;
+                    rightWins = 0;
+                }
+            }
+        }
+
+        // what is left of the left run is in place already
+        System.arraycopy(aux, 0, a, lo, j + 1);
+    }
+
+    /**
+     * Exponential search from the low end: probes a[lo], a[lo+1], a[lo+3], a[lo+7], ... until it passes the answer,
+     * then binary searches the last step. O(lg d) compares for an answer d items from lo.
+     *
+     * @param upper whether to find the first item greater than key, rather than the first item not less than key
+     * @return      the first index in a[lo, hi) whose item is greater (or not less) than key, or hi if there is none
+     */
+    private static <E extends Comparable<E>> int gallopForward(E[] a, int lo, int hi, E key, boolean upper) {
+        int from = lo, probe = lo;
+        for (int step = 1; probe < hi && before(a[probe], key, upper); step <<= 1) {
+            from = probe + 1;
+            probe = (int) Math.min(hi, (long) probe + step);
+        }
+        return upper ? Merge.upperBound(a, from, probe, key) : Merge.lowerBound(a, from, probe, key);
+    }
+
+    /**
+     * Like {@link #gallopForward(Comparable[], int, int, Comparable, boolean)}, probing a[hi-1], a[hi-2], a[hi-4],
+     * ... from the high end instead.
+     */
+    private static <E extends Comparable<E>> int gallopBackward(E[] a, int lo, int hi, E key, boolean upper) {
+        int to = hi, probe = hi - 1;
+        for (int step = 1; probe >= lo && !before(a[probe], key, upper); step <<= 1) {
+            to = probe;
+            probe = (int) Math.max(lo - 1, (long) probe - step);
+        }
+        return upper ? Merge.upperBound(a, probe + 1, to, key) : Merge.lowerBound(a, probe + 1, to, key);
+    }
+
+    /**
+     * @return  whether item comes before the index searched for by the gallops.
+     */
+    private static <E extends Comparable<E>> boolean before(E item, E key, boolean upper) {
+        int c = item.compareTo(key);
+        return upper ? c <= 0 : c < 0;
+    }
+
+    @SuppressWarnings("Duplicates")
+    public static void main(String[] args) {
+        Integer[] array = Utility.randomIntArray(100);
+
+        System.out.println("Before:");
+        Utility.printArray(array);
+
+        sort(array);
+        assert Utility.isSorted(array);
+
+        System.out.println("After:");
+        Utility.printArray(array);
+    }
+}
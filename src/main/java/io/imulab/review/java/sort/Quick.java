@@ -1,13 +1,20 @@
 package io.imulab.review.java.sort;
 
-import io.imulab.review.java.sort.application.Shuffle;
-
 /**
  * Quick sort.
  *
- * Idea: select first item as pivot, use i to scan from left to right, and use j to scan from right to left. Stop when
- * a[i] >= pivot and/or a[j] < pivot. Swap out-of-place items a[i] and a[j]. When i and j crosses, it means we now have
- * an array which has a pivot item where left of pivot <= pivot <= right of pivot. Recursively execute this process.
+ * Idea: select a pivot and move it to the front, use i to scan from left to right, and use j to scan from right to
+ * left. Stop when a[i] >= pivot and/or a[j] <= pivot. Swap out-of-place items a[i] and a[j]. When i and j crosses, it
+ * means we now have an array which has a pivot item where left of pivot <= pivot <= right of pivot. Recursively
+ * execute this process.
+ *
+ * The pivot is the median of three samples, or for larger sub arrays the median of three medians of three (Tukey's
+ * ninther). This replaces shuffling the whole array upfront, and defeats sorted, reversed and organ-pipe input. Sub
+ * arrays of at most {@link #INSERTION_CUTOFF} items are finished off by {@link SmallSort}. Should the recursion still
+ * get deeper than 2lgN, the sub array is handed to heap sort instead (introsort), so the worst case is O(NlgN).
+ *
+ * The three-way mode uses Bentley-McIlroy partitioning, which gathers items equal to the pivot in the middle and
+ * excludes them from further recursion. It is linear when there are only a few distinct keys.
  *
  * This algorithm is not stable.
  *
@@ -15,37 +22,85 @@ import io.imulab.review.java.sort.application.Shuffle;
  */
 public class Quick {
 
+    /**
+     * Sub arrays of at most this many items are sorted by {@link SmallSort}.
+     */
+    static final int INSERTION_CUTOFF = SmallSort.CUTOFF;
+
+    /**
+     * Sub arrays of at least this many items use the ninther rather than median of three as pivot.
+     */
+    static final int NINTHER_THRESHOLD = 40;
+
     static <E extends Comparable<E>> void sort(E[] elements) {
-        Shuffle.knuthShuffle(elements);
-        sort(elements, 0, elements.length - 1);
+        sort(elements, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, SortMetrics metrics) {
+        metrics.begin("Quick", elements.length);
+        sort(elements, 0, elements.length - 1, 0, depthLimit(elements.length), metrics);
+        metrics.end();
+    }
+
+    static <E extends Comparable<E>> void threeWaySort(E[] elements) {
+        threeWaySort(elements, SortMetrics.NONE);
     }
 
-    private static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi) {
-        // terminate recursion if we are down to 1 item.
-        if (hi <= lo)
-            return;
+    static <E extends Comparable<E>> void threeWaySort(E[] elements, SortMetrics metrics) {
+        metrics.begin("QuickThreeWay", elements.length);
+        threeWaySort(elements, 0, elements.length - 1, 0, depthLimit(elements.length), metrics);
+        metrics.end();
+    }
+
+    /**
+     * Sort a[lo..hi], which is level partitions deep. Past limit levels it is heap sorted instead.
+     */
+    private static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi, int level, int limit,
+                                                       SortMetrics metrics) {
+        // recurse into the smaller side and loop on the larger one, so the stack stays O(lgN)
+        while (hi - lo >= INSERTION_CUTOFF) {
+            if (level == limit) {
+                Heap.sort(elements, lo, hi, metrics);
+                return;
+            }
+            metrics.enter(level++);
 
-        // partition the array so that left of k <= k <= right of k
-        int k = partition(elements, lo, hi);
+            // partition the array so that left of k <= k <= right of k
+            int k = partition(elements, lo, hi, metrics);
 
-        // sort left and right.
-        sort(elements, lo, k - 1);
-        sort(elements, k + 1, hi);
+            if (k - lo < hi - k) {
+                sort(elements, lo, k - 1, level, limit, metrics);
+                lo = k + 1;
+            } else {
+                sort(elements, k + 1, hi, level, limit, metrics);
+                hi = k - 1;
+            }
+        }
+
+        SmallSort.sort(elements, lo, hi, metrics);
     }
 
-    private static <E extends Comparable<E>> int partition(E[] elements, int lo, int hi) {
+    /**
+     * Partition a[lo..hi] around a median of three or ninther pivot.
+     *
+     * @return  the final index of the pivot: a[lo..j-1] <= a[j] <= a[j+1..hi].
+     */
+    static <E extends Comparable<E>> int partition(E[] elements, int lo, int hi, SortMetrics metrics) {
         assert elements.length > 0;
 
+        // move the pivot to the front
+        Utility.swap(elements, lo, pivot(elements, lo, hi, metrics), metrics);
+
         int i = lo, j = hi + 1;
         while (true) {
 
             // while i < pivot, move right
-            while (elements[++i].compareTo(elements[lo]) < 0)
+            while (Utility.compare(elements[++i], elements[lo], metrics) < 0)
                 if (i == hi)
                     break;
 
             // while j > pivot, move left
-            while (elements[lo].compareTo(elements[--j]) < 0)
+            while (Utility.compare(elements[lo], elements[--j], metrics) < 0)
                 if (j == lo)
                     break;
 
@@ -54,17 +109,333 @@ public class Quick {
                 break;
 
             // swap out of place items
-            Utility.swap(elements, i, j);
+            Utility.swap(elements, i, j, metrics);
         }
 
         // put pivot into place
         // now left of pivot <= pivot <= right of pivot
-        Utility.swap(elements, lo, j);
+        Utility.swap(elements, lo, j, metrics);
 
         // return pivot position to start next round of recursion.
         return j;
     }
 
+    /**
+     * Bentley-McIlroy three-way partitioning. During the scan, items equal to the pivot are swapped to the two ends of
+     * the sub array, so the invariant is:
+     *
+     *      | == v | < v |    unknown    | > v | == v |
+     *      lo     p     i               j     q     hi
+     *
+     * When the cursors cross, the two ends are swapped into the middle, and only the < v and > v parts recurse.
+     */
+    private static <E extends Comparable<E>> void threeWaySort(E[] elements, int lo, int hi, int level, int limit,
+                                                               SortMetrics metrics) {
+        while (hi - lo >= INSERTION_CUTOFF) {
+            if (level == limit) {
+                Heap.sort(elements, lo, hi, metrics);
+                return;
+            }
+            metrics.enter(level++);
+
+            Utility.swap(elements, lo, pivot(elements, lo, hi, metrics), metrics);
+            E v = elements[lo];
+
+            int i = lo, j = hi + 1;
+            int p = lo, q = hi + 1;
+            while (true) {
+                while (Utility.compare(elements[++i], v, metrics) < 0)
+                    if (i == hi)
+                        break;
+
+                while (Utility.compare(v, elements[--j], metrics) < 0)
+                    if (j == lo)
+                        break;
+
+                // cursors met on an item equal to the pivot
+                if (i == j && Utility.compare(elements[i], v, metrics) == 0)
+                    Utility.swap(elements, ++p, i, metrics);
+                if (i >= j)
+                    break;
+
+                Utility.swap(elements, i, j, metrics);
+                if (Utility.compare(elements[i], v, metrics) == 0)
+                    Utility.swap(elements, ++p, i, metrics);
+                if (Utility.compare(elements[j], v, metrics) == 0)
+                    Utility.swap(elements, --q, j, metrics);
+            }
+
+            // swap the equal items from both ends into the middle
+            i = j + 1;
+            for (int k = lo; k <= p; k++)
+                Utility.swap(elements, k, j--, metrics);
+            for (int k = hi; k >= q; k--)
+                Utility.swap(elements, k, i++, metrics);
+
+            // now a[lo..j] < v == a[j+1..i-1] < a[i..hi]
+            if (j - lo < hi - i) {
+                threeWaySort(elements, lo, j, level, limit, metrics);
+                lo = i;
+            } else {
+                threeWaySort(elements, i, hi, level, limit, metrics);
+                hi = j;
+            }
+        }
+
+        SmallSort.sort(elements, lo, hi, metrics);
+    }
+
+    /**
+     * Choose a pivot for a[lo..hi]: median of three for small sub arrays, Tukey's ninther for larger ones.
+     *
+     * @return  index of the pivot
+     */
+    private static <E extends Comparable<E>> int pivot(E[] a, int lo, int hi, SortMetrics m) {
+        int n = hi - lo + 1;
+        int mid = lo + (n >>> 1);
+        if (n < NINTHER_THRESHOLD)
+            return median(a, lo, mid, hi, m);
+
+        int eps = n >>> 3;
+        return median(a,
+                median(a, lo, lo + eps, lo + eps + eps, m),
+                median(a, mid - eps, mid, mid + eps, m),
+                median(a, hi - eps - eps, hi - eps, hi, m), m);
+    }
+
+    private static <E extends Comparable<E>> int median(E[] a, int i, int j, int k, SortMetrics m) {
+        return Utility.compare(a[i], a[j], m) < 0 ?
+                (Utility.compare(a[j], a[k], m) < 0 ? j : Utility.compare(a[i], a[k], m) < 0 ? k : i) :
+                (Utility.compare(a[k], a[j], m) < 0 ? j : Utility.compare(a[k], a[i], m) < 0 ? k : i);
+    }
+
+    /**
+     * @return  the number of partitioning levels allowed before falling back to heap sort, which is 2lgN.
+     */
+    static int depthLimit(int n) {
+        return 2 * (31 - Integer.numberOfLeadingZeros(Math.max(n, 1)));
+    }
+
+    /*
+     * Primitive versions, with the same pivot selection, insertion sort cutoff and heap sort fallback.
+     */
+
+    static void sort(int[] elements) {
+        sort(elements, 0, elements.length - 1, depthLimit(elements.length));
+    }
+
+    static void sort(int[] elements, int lo, int hi) {
+        sort(elements, lo, hi, depthLimit(hi - lo + 1));
+    }
+
+    private static void sort(int[] elements, int lo, int hi, int depth) {
+        while (hi - lo >= INSERTION_CUTOFF) {
+            if (depth-- == 0) {
+                Heap.sort(elements, lo, hi);
+                return;
+            }
+
+            int k = partition(elements, lo, hi);
+
+            if (k - lo < hi - k) {
+                sort(elements, lo, k - 1, depth);
+                lo = k + 1;
+            } else {
+                sort(elements, k + 1, hi, depth);
+                hi = k - 1;
+            }
+        }
+
+        SmallSort.sort(elements, lo, hi);
+    }
+
+    private static int partition(int[] elements, int lo, int hi) {
+        Utility.swap(elements, lo, pivot(elements, lo, hi));
+        int pivot = elements[lo];
+
+        int i = lo, j = hi + 1;
+        while (true) {
+            while (elements[++i] < pivot)
+                if (i == hi)
+                    break;
+
+            while (pivot < elements[--j])
+                if (j == lo)
+                    break;
+
+            if (i >= j)
+                break;
+
+            Utility.swap(elements, i, j);
+        }
+
+        Utility.swap(elements, lo, j);
+        return j;
+    }
+
+    private static int pivot(int[] a, int lo, int hi) {
+        int n = hi - lo + 1;
+        int mid = lo + (n >>> 1);
+        if (n < NINTHER_THRESHOLD)
+            return median(a, lo, mid, hi);
+
+        int eps = n >>> 3;
+        return median(a,
+                median(a, lo, lo + eps, lo + eps + eps),
+                median(a, mid - eps, mid, mid + eps),
+                median(a, hi - eps - eps, hi - eps, hi));
+    }
+
+    private static int median(int[] a, int i, int j, int k) {
+        return a[i] < a[j] ?
+                (a[j] < a[k] ? j : a[i] < a[k] ? k : i) :
+                (a[k] < a[j] ? j : a[k] < a[i] ? k : i);
+    }
+
+    static void sort(long[] elements) {
+        sort(elements, 0, elements.length - 1, depthLimit(elements.length));
+    }
+
+    static void sort(long[] elements, int lo, int hi) {
+        sort(elements, lo, hi, depthLimit(hi - lo + 1));
+    }
+
+    private static void sort(long[] elements, int lo, int hi, int depth) {
+        while (hi - lo >= INSERTION_CUTOFF) {
+            if (depth-- == 0) {
+                Heap.sort(elements, lo, hi);
+                return;
+            }
+
+            int k = partition(elements, lo, hi);
+
+            if (k - lo < hi - k) {
+                sort(elements, lo, k - 1, depth);
+                lo = k + 1;
+            } else {
+                sort(elements, k + 1, hi, depth);
+                hi = k - 1;
+            }
+        }
+
+        SmallSort.sort(elements, lo, hi);
+    }
+
+    private static int partition(long[] elements, int lo, int hi) {
+        Utility.swap(elements, lo, pivot(elements, lo, hi));
+        long pivot = elements[lo];
+
+        int i = lo, j = hi + 1;
+        while (true) {
+            while (elements[++i] < pivot)
+                if (i == hi)
+                    break;
+
+            while (pivot < elements[--j])
+                if (j == lo)
+                    break;
+
+            if (i >= j)
+                break;
+
+            Utility.swap(elements, i, j);
+        }
+
+        Utility.swap(elements, lo, j);
+        return j;
+    }
+
+    private static int pivot(long[] a, int lo, int hi) {
+        int n = hi - lo + 1;
+        int mid = lo + (n >>> 1);
+        if (n < NINTHER_THRESHOLD)
+            return median(a, lo, mid, hi);
+
+        int eps = n >>> 3;
+        return median(a,
+                median(a, lo, lo + eps, lo + eps + eps),
+                median(a, mid - eps, mid, mid + eps),
+                median(a, hi - eps - eps, hi - eps, hi));
+    }
+
+    private static int median(long[] a, int i, int j, int k) {
+        return a[i] < a[j] ?
+                (a[j] < a[k] ? j : a[i] < a[k] ? k : i) :
+                (a[k] < a[j] ? j : a[k] < a[i] ? k : i);
+    }
+
+    static void sort(double[] elements) {
+        sort(elements, 0, elements.length - 1, depthLimit(elements.length));
+    }
+
+    static void sort(double[] elements, int lo, int hi) {
+        sort(elements, lo, hi, depthLimit(hi - lo + 1));
+    }
+
+    private static void sort(double[] elements, int lo, int hi, int depth) {
+        while (hi - lo >= INSERTION_CUTOFF) {
+            if (depth-- == 0) {
+                Heap.sort(elements, lo, hi);
+                return;
+            }
+
+            int k = partition(elements, lo, hi);
+
+            if (k - lo < hi - k) {
+                sort(elements, lo, k - 1, depth);
+                lo = k + 1;
+            } else {
+                sort(elements, k + 1, hi, depth);
+                hi = k - 1;
+            }
+        }
+
+        SmallSort.sort(elements, lo, hi);
+    }
+
+    private static int partition(double[] elements, int lo, int hi) {
+        Utility.swap(elements, lo, pivot(elements, lo, hi));
+        double pivot = elements[lo];
+
+        int i = lo, j = hi + 1;
+        while (true) {
+            while (Double.compare(elements[++i], pivot) < 0)
+                if (i == hi)
+                    break;
+
+            while (Double.compare(pivot, elements[--j]) < 0)
+                if (j == lo)
+                    break;
+
+            if (i >= j)
+                break;
+
+            Utility.swap(elements, i, j);
+        }
+
+        Utility.swap(elements, lo, j);
+        return j;
+    }
+
+    private static int pivot(double[] a, int lo, int hi) {
+        int n = hi - lo + 1;
+        int mid = lo + (n >>> 1);
+        if (n < NINTHER_THRESHOLD)
+            return median(a, lo, mid, hi);
+
+        int eps = n >>> 3;
+        return median(a,
+                median(a, lo, lo + eps, lo + eps + eps),
+                median(a, mid - eps, mid, mid + eps),
+                median(a, hi - eps - eps, hi - eps, hi));
+    }
+
+    private static int median(double[] a, int i, int j, int k) {
+        return Double.compare(a[i], a[j]) < 0 ?
+                (Double.compare(a[j], a[k]) < 0 ? j : Double.compare(a[i], a[k]) < 0 ? k : i) :
+                (Double.compare(a[k], a[j]) < 0 ? j : Double.compare(a[k], a[i]) < 0 ? k : i);
+    }
+
     @SuppressWarnings("Duplicates")
     public static void main(String[] args) {
         Integer[] array = Utility.randomIntArray(32);
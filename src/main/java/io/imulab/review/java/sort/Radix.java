@@ -0,0 +1,395 @@
+package io.imulab.review.java.sort;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * Radix sorts. They look at the keys one digit at a time instead of comparing whole keys, so they are not bound by the
+ * NlgN compares lower bound.
+ *
+ * LSD (least significant digit first) sorts int, long and double keys with 8 bit digits: one counting pass builds the
+ * histograms of all digits at once, then every digit takes one stable distribution pass from the array to the aux
+ * array and back. A digit that is the same for all keys is skipped. Signed keys get the sign bit of their top digit
+ * flipped, and doubles are mapped to longs whose order matches {@link Double#compare(double, double)}. That's O(N) for
+ * 4 or 8 passes, and the sorts are stable.
+ *
+ * MSD (most significant digit first) sorts strings by bucketing on the first digit and recursing into each bucket on
+ * the next digit. Strings are read as 16 bit chars, split into two 8 bit digits, so the order is that of
+ * {@link String#compareTo(String)}. Three-way radix quick sort partitions on one char at a time instead, which does
+ * better when there are long common prefixes or when chars are spread thin over the alphabet.
+ *
+ * Each sort has an overload taking the aux buffer(s), and one also taking the count table, so that callers sorting
+ * repeatedly can reuse them. A buffer has to be at least as long as the array. A table from {@link #countTable()}
+ * serves every LSD sort; it is cleared by the sort, so it can be passed in dirty.
+ */
+public class Radix {
+
+    private static final int BITS_PER_DIGIT = 8;
+    private static final int R = 1 << BITS_PER_DIGIT;
+    private static final int MASK = R - 1;
+
+    /**
+     * String sub arrays of at most this many items are finished off with insertion sort.
+     */
+    private static final int STRING_CUTOFF = 15;
+
+    static void sort(int[] elements) {
+        sort(elements, new int[elements.length]);
+    }
+
+    /**
+     * @return  a count table for the LSD sorts, a row of R + 1 counts per digit of the widest key.
+     */
+    static int[][] countTable() {
+        return new int[Long.SIZE / BITS_PER_DIGIT][R + 1];
+    }
+
+    static void sort(int[] elements, int[] aux) {
+        sort(elements, aux, countTable());
+    }
+
+    /**
+     * @param aux   aux buffer, at least as long as the array
+     * @param count count table, see {@link #countTable()}
+     */
+    static void sort(int[] elements, int[] aux, int[][] count) {
+        int n = elements.length;
+        if (n <= 1)
+            return;
+        assert aux.length >= n;
+
+        final int digits = Integer.SIZE / BITS_PER_DIGIT;
+        clear(count, digits);
+        for (int v : elements) {
+            for (int d = 0; d < digits; d++)
+                count[d][digit(v, d, digits) + 1]++;
+        }
+
+        int[] src = elements, dst = aux;
+        for (int d = 0; d < digits; d++) {
+            int[] c = count[d];
+            if (c[digit(src[0], d, digits) + 1] == n)
+                continue;
+
+            for (int r = 0; r < R; r++)
+                c[r + 1] += c[r];
+            for (int i = 0; i < n; i++) {
+                int v = src[i];
+                dst[c[digit(v, d, digits)]++] = v;
+            }
+
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+
+        if (src != elements)
+            System.arraycopy(src, 0, elements, 0, n);
+    }
+
+    private static void clear(int[][] count, int digits) {
+        assert count.length >= digits;
+        for (int d = 0; d < digits; d++)
+            Arrays.fill(count[d], 0);
+    }
+
+    /**
+     * @return  digit d (0 is the least significant) of the key, with the sign bit of the top digit flipped.
+     */
+    private static int digit(int v, int d, int digits) {
+        int b = (v >>> (d * BITS_PER_DIGIT)) & MASK;
+        return (d == digits - 1) ? b ^ (R >>> 1) : b;
+    }
+
+    static void sort(long[] elements) {
+        sort(elements, new long[elements.length]);
+    }
+
+    static void sort(long[] elements, long[] aux) {
+        sort(elements, aux, elements.length, countTable());
+    }
+
+    static void sort(long[] elements, long[] aux, int[][] count) {
+        sort(elements, aux, elements.length, count);
+    }
+
+    /**
+     * Sort the first n items of the array.
+     */
+    private static void sort(long[] elements, long[] aux, int n, int[][] count) {
+        if (n <= 1)
+            return;
+        assert elements.length >= n && aux.length >= n;
+
+        final int digits = Long.SIZE / BITS_PER_DIGIT;
+        clear(count, digits);
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < digits; d++)
+                count[d][digit(elements[i], d, digits) + 1]++;
+        }
+
+        long[] src = elements, dst = aux;
+        for (int d = 0; d < digits; d++) {
+            int[] c = count[d];
+            if (c[digit(src[0], d, digits) + 1] == n)
+                continue;
+
+            for (int r = 0; r < R; r++)
+                c[r + 1] += c[r];
+            for (int i = 0; i < n; i++) {
+                long v = src[i];
+                dst[c[digit(v, d, digits)]++] = v;
+            }
+
+            long[] t = src;
+            src = dst;
+            dst = t;
+        }
+
+        if (src != elements)
+            System.arraycopy(src, 0, elements, 0, n);
+    }
+
+    private static int digit(long v, int d, int digits) {
+        int b = (int) (v >>> (d * BITS_PER_DIGIT)) & MASK;
+        return (d == digits - 1) ? b ^ (R >>> 1) : b;
+    }
+
+    static void sort(double[] elements) {
+        sort(elements, new long[elements.length], new long[elements.length]);
+    }
+
+    /**
+     * Sort doubles by sorting their bits as longs.
+     *
+     * @param elements  array
+     * @param keys      buffer holding the keys being sorted
+     * @param aux       aux buffer for sorting the keys
+     */
+    static void sort(double[] elements, long[] keys, long[] aux) {
+        sort(elements, keys, aux, countTable());
+    }
+
+    static void sort(double[] elements, long[] keys, long[] aux, int[][] count) {
+        int n = elements.length;
+        if (n <= 1)
+            return;
+        assert keys.length >= n;
+
+        for (int i = 0; i < n; i++)
+            keys[i] = toSortableBits(Double.doubleToLongBits(elements[i]));
+
+        sort(keys, aux, n, count);
+
+        for (int i = 0; i < n; i++)
+            elements[i] = Double.longBitsToDouble(toSortableBits(keys[i]));
+    }
+
+    /**
+     * Positive doubles already order like their bits do. Negative ones order in reverse, so flip all but the sign
+     * bit. The mapping is its own inverse.
+     */
+    private static long toSortableBits(long bits) {
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    static <E> void sort(E[] elements, ToIntFunction<? super E> key) {
+        int n = elements.length;
+        sort(elements, key, new int[n], new int[n], new Object[n]);
+    }
+
+    /**
+     * Sort objects by an int key. Keys are extracted once, then keys and objects move together through the same LSD
+     * passes as {@link #sort(int[], int[])}. The sort is stable.
+     *
+     * @param elements  array
+     * @param key       extracts the sort key of an item
+     * @param keys      buffer holding the extracted keys
+     * @param keysAux   aux buffer for the keys
+     * @param aux       aux buffer for the items
+     */
+    static <E> void sort(E[] elements, ToIntFunction<? super E> key, int[] keys, int[] keysAux, Object[] aux) {
+        sort(elements, key, keys, keysAux, aux, countTable());
+    }
+
+    static <E> void sort(E[] elements, ToIntFunction<? super E> key, int[] keys, int[] keysAux, Object[] aux,
+                         int[][] count) {
+        int n = elements.length;
+        if (n <= 1)
+            return;
+        assert keys.length >= n && keysAux.length >= n && aux.length >= n;
+
+        final int digits = Integer.SIZE / BITS_PER_DIGIT;
+        clear(count, digits);
+        for (int i = 0; i < n; i++) {
+            int v = keys[i] = key.applyAsInt(elements[i]);
+            for (int d = 0; d < digits; d++)
+                count[d][digit(v, d, digits) + 1]++;
+        }
+
+        int[] srcKeys = keys, dstKeys = keysAux;
+        Object[] src = elements, dst = aux;
+        for (int d = 0; d < digits; d++) {
+            int[] c = count[d];
+            if (c[digit(srcKeys[0], d, digits) + 1] == n)
+                continue;
+
+            for (int r = 0; r < R; r++)
+                c[r + 1] += c[r];
+            for (int i = 0; i < n; i++) {
+                int p = c[digit(srcKeys[i], d, digits)]++;
+                dstKeys[p] = srcKeys[i];
+                dst[p] = src[i];
+            }
+
+            int[] t = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = t;
+            Object[] o = src;
+            src = dst;
+            dst = o;
+        }
+
+        if (src != elements)
+            System.arraycopy(src, 0, elements, 0, n);
+    }
+
+    static void msdSort(String[] elements) {
+        msdSort(elements, new String[elements.length]);
+    }
+
+    static void msdSort(String[] elements, String[] aux) {
+        int maxLength = 0;
+        for (String s : elements)
+            maxLength = Math.max(maxLength, s.length());
+
+        msdSort(elements, aux, new int[2 * maxLength + 1][]);
+    }
+
+    /**
+     * @param count count arrays per depth, at least one more than twice the length of the longest string. Missing
+     *              arrays are allocated into the table on first use, so a table kept by the caller fills up once.
+     */
+    static void msdSort(String[] elements, String[] aux, int[][] count) {
+        assert aux.length >= elements.length;
+        assert Arrays.stream(elements).allMatch(s -> 2 * s.length() < count.length);
+
+        msdSort(elements, aux, 0, elements.length - 1, 0, count);
+    }
+
+    /**
+     * Sort a[lo..hi], whose strings all share their first d digits, by digit d.
+     *
+     * @param count     count arrays per depth. The count array of depth d is in use while the buckets of depth d are
+     *                  being sorted, and free again afterwards, so one array per depth is enough.
+     */
+    private static void msdSort(String[] a, String[] aux, int lo, int hi, int d, int[][] count) {
+        if (hi <= lo + STRING_CUTOFF) {
+            insertion(a, lo, hi);
+            return;
+        }
+
+        if (count[d] == null)
+            count[d] = new int[R + 2];
+        int[] c = count[d];
+        Arrays.fill(c, 0);
+
+        // bucket 0 of c is reserved for strings that end before digit d
+        for (int i = lo; i <= hi; i++)
+            c[digit(a[i], d) + 2]++;
+        for (int r = 0; r < R + 1; r++)
+            c[r + 1] += c[r];
+        for (int i = lo; i <= hi; i++)
+            aux[c[digit(a[i], d) + 1]++] = a[i];
+        System.arraycopy(aux, 0, a, lo, hi - lo + 1);
+
+        // strings that have ended are in place, sort each of the other buckets
+        for (int r = 0; r < R; r++)
+            msdSort(a, aux, lo + c[r], lo + c[r + 1] - 1, d + 1, count);
+    }
+
+    /**
+     * @return  digit d of the string, with two digits per char (high byte first), or -1 past the end of the string.
+     */
+    private static int digit(String s, int d) {
+        int i = d >>> 1;
+        if (i >= s.length())
+            return -1;
+
+        char c = s.charAt(i);
+        return ((d & 1) == 0) ? c >>> BITS_PER_DIGIT : c & MASK;
+    }
+
+    static void threeWaySort(String[] elements) {
+        threeWaySort(elements, 0, elements.length - 1, 0);
+    }
+
+    /**
+     * Three-way radix quick sort a[lo..hi], whose strings all share their first d chars: partition on char d into
+     * less than, equal to and greater than the pivot char, then only the equal part moves on to char d+1.
+     */
+    private static void threeWaySort(String[] a, int lo, int hi, int d) {
+        if (hi <= lo + STRING_CUTOFF) {
+            insertion(a, lo, hi);
+            return;
+        }
+
+        // median of three chars as the pivot, moved to the front
+        int mid = lo + ((hi - lo) >>> 1);
+        int c1 = charAt(a[lo], d), c2 = charAt(a[mid], d), c3 = charAt(a[hi], d);
+        int m = (c1 < c2) ? ((c2 < c3) ? mid : (c1 < c3) ? hi : lo) : ((c3 < c2) ? mid : (c3 < c1) ? hi : lo);
+        Utility.swap(a, lo, m);
+
+        int v = charAt(a[lo], d);
+        int lt = lo, gt = hi, i = lo + 1;
+        while (i <= gt) {
+            int t = charAt(a[i], d);
+            if (t < v)
+                Utility.swap(a, lt++, i++);
+            else if (t > v)
+                Utility.swap(a, i, gt--);
+            else
+                i++;
+        }
+
+        // now a[lo..lt-1] < v = a[lt..gt] < a[gt+1..hi] on char d
+        threeWaySort(a, lo, lt - 1, d);
+        if (v >= 0)
+            threeWaySort(a, lt, gt, d + 1);
+        threeWaySort(a, gt + 1, hi, d);
+    }
+
+    private static int charAt(String s, int d) {
+        return (d < s.length()) ? s.charAt(d) : -1;
+    }
+
+    private static void insertion(String[] a, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            String v = a[i];
+            int j = i;
+            for (; j > lo && v.compareTo(a[j - 1]) < 0; j--)
+                a[j] = a[j - 1];
+            a[j] = v;
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] array = new int[32];
+        for (int i = 0; i < array.length; i++)
+            array[i] = ThreadLocalRandom.current().nextInt(-100, 100);
+
+        System.out.println("Before:");
+        System.out.println(Arrays.toString(array));
+
+        sort(array);
+        assert Utility.isSorted(array);
+
+        System.out.println("After:");
+        System.out.println(Arrays.toString(array));
+
+        String[] words = "she sells seashells by the sea shore the shells she sells are surely seashells".split(" ");
+        msdSort(words);
+        System.out.println(Arrays.toString(words));
+    }
+}
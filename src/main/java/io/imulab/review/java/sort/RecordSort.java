@@ -0,0 +1,310 @@
+package io.imulab.review.java.sort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sorts fixed-width records in place inside a {@link ByteBuffer}, typically a direct buffer or a memory mapped file
+ * region, without turning them into objects first.
+ *
+ * Records are ordered by the unsigned, lexicographic order of their key bytes, which are compared 8 bytes at a time.
+ * Records are swapped and moved one at a time with word sized absolute reads and writes, and ranges of records with
+ * bulk puts, so sorting allocates nothing beyond views of the buffers.
+ *
+ * {@link #quickSort(ByteBuffer)} follows {@link Quick}: ninther pivots, insertion sort below the cutoff and heap sort
+ * past the depth limit. It is in place and not stable. {@link #mergeSort(ByteBuffer, ByteBuffer)} follows
+ * {@link Merge}, needs an aux buffer of the same size, and is stable.
+ *
+ * A ByteBuffer is limited to 2GB, so larger data sets have to be sorted in regions and merged, see
+ * {@link ExternalMerge}.
+ */
+public class RecordSort {
+
+    private final int recordSize;
+    private final int keyOffset;
+    private final int keyLength;
+
+    /**
+     * @param recordSize    size of each record in bytes
+     * @param keyOffset     offset of the key within a record
+     * @param keyLength     length of the key in bytes
+     */
+    public RecordSort(int recordSize, int keyOffset, int keyLength) {
+        if (recordSize <= 0 || keyOffset < 0 || keyLength <= 0 || keyOffset + keyLength > recordSize)
+            throw new IllegalArgumentException("key must lie within the record");
+
+        this.recordSize = recordSize;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+    }
+
+    /**
+     * Sort the records between the position and the limit of the buffer. Position and limit are left untouched.
+     */
+    public void quickSort(ByteBuffer records) {
+        ByteBuffer b = view(records);
+        int n = b.capacity() / recordSize;
+        quickSort(b, 0, n - 1, Quick.depthLimit(n));
+    }
+
+    /**
+     * Stable sort of the records between the position and the limit of the buffer.
+     *
+     * @param records   the records to sort
+     * @param aux       a buffer with at least as many bytes remaining as records
+     */
+    public void mergeSort(ByteBuffer records, ByteBuffer aux) {
+        ByteBuffer b = view(records);
+        if (aux.remaining() < b.capacity())
+            throw new IllegalArgumentException("aux buffer has fewer bytes remaining than the records");
+        ByteBuffer x = aux.slice().order(ByteOrder.BIG_ENDIAN);
+
+        mergeSort(b, x, 0, b.capacity() / recordSize - 1);
+    }
+
+    /**
+     * Map the file and sort its records in place.
+     */
+    public void sort(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            quickSort(mapped);
+            mapped.force();
+        }
+    }
+
+    private ByteBuffer view(ByteBuffer records) {
+        if (records.remaining() % recordSize != 0)
+            throw new IllegalArgumentException("buffer does not hold a whole number of records");
+
+        // big endian, so that comparing 8 key bytes as an unsigned long is the same as comparing them one by one
+        return records.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private void quickSort(ByteBuffer b, int lo, int hi, int depth) {
+        while (hi - lo >= Quick.INSERTION_CUTOFF) {
+            if (depth-- == 0) {
+                heapSort(b, lo, hi);
+                return;
+            }
+
+            int k = partition(b, lo, hi);
+
+            if (k - lo < hi - k) {
+                quickSort(b, lo, k - 1, depth);
+                lo = k + 1;
+            } else {
+                quickSort(b, k + 1, hi, depth);
+                hi = k - 1;
+            }
+        }
+
+        insertionSort(b, lo, hi);
+    }
+
+    /**
+     * Same as the partition of {@link Quick}, the pivot record stays at lo until the cursors cross.
+     */
+    private int partition(ByteBuffer b, int lo, int hi) {
+        swap(b, lo, pivot(b, lo, hi));
+
+        int i = lo, j = hi + 1;
+        while (true) {
+            while (compare(b, ++i, b, lo) < 0)
+                if (i == hi)
+                    break;
+
+            while (compare(b, lo, b, --j) < 0)
+                if (j == lo)
+                    break;
+
+            if (i >= j)
+                break;
+
+            swap(b, i, j);
+        }
+
+        swap(b, lo, j);
+        return j;
+    }
+
+    private int pivot(ByteBuffer b, int lo, int hi) {
+        int n = hi - lo + 1;
+        int mid = lo + (n >>> 1);
+        if (n < Quick.NINTHER_THRESHOLD)
+            return median(b, lo, mid, hi);
+
+        int eps = n >>> 3;
+        return median(b,
+                median(b, lo, lo + eps, lo + eps + eps),
+                median(b, mid - eps, mid, mid + eps),
+                median(b, hi - eps - eps, hi - eps, hi));
+    }
+
+    private int median(ByteBuffer b, int i, int j, int k) {
+        return compare(b, i, b, j) < 0 ?
+                (compare(b, j, b, k) < 0 ? j : compare(b, i, b, k) < 0 ? k : i) :
+                (compare(b, k, b, j) < 0 ? j : compare(b, k, b, i) < 0 ? k : i);
+    }
+
+    /**
+     * Same as the 0-based range heap sort of {@link Heap}.
+     */
+    private void heapSort(ByteBuffer b, int lo, int hi) {
+        int n = hi - lo + 1;
+
+        for (int k = n / 2 - 1; k >= 0; k--)
+            sink(b, lo, k, n);
+
+        while (n > 1) {
+            swap(b, lo, lo + --n);
+            sink(b, lo, 0, n);
+        }
+    }
+
+    private void sink(ByteBuffer b, int lo, int k, int n) {
+        int child;
+        while ((child = 2 * k + 1) < n) {
+            if (child + 1 < n && compare(b, lo + child, b, lo + child + 1) < 0)
+                child++;
+
+            if (compare(b, lo + k, b, lo + child) >= 0)
+                break;
+
+            swap(b, lo + k, lo + child);
+            k = child;
+        }
+    }
+
+    /**
+     * Insertion sort with adjacent swaps. Only strictly greater records are swapped, so it is stable.
+     */
+    private void insertionSort(ByteBuffer b, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(b, j - 1, b, j) > 0; j--)
+                swap(b, j - 1, j);
+        }
+    }
+
+    private void mergeSort(ByteBuffer b, ByteBuffer aux, int lo, int hi) {
+        if (hi - lo < Quick.INSERTION_CUTOFF) {
+            insertionSort(b, lo, hi);
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        mergeSort(b, aux, lo, mid);
+        mergeSort(b, aux, mid + 1, hi);
+
+        // halves are already in order
+        if (compare(b, mid, b, mid + 1) <= 0)
+            return;
+
+        copy(b, lo, aux, lo, hi - lo + 1);
+
+        int i = lo, j = mid + 1, k = lo;
+        while (i <= mid && j <= hi) {
+            if (compare(aux, j, aux, i) < 0)
+                copy(aux, j++, b, k++, 1);
+            else
+                copy(aux, i++, b, k++, 1);
+        }
+
+        // whatever is left of the right half is in place already
+        if (i <= mid)
+            copy(aux, i, b, k, mid - i + 1);
+    }
+
+    /**
+     * Compare the keys of record i of buffer a and record j of buffer b.
+     */
+    private int compare(ByteBuffer a, int i, ByteBuffer b, int j) {
+        int x = i * recordSize + keyOffset, y = j * recordSize + keyOffset;
+
+        int k = 0;
+        for (; k + Long.BYTES <= keyLength; k += Long.BYTES) {
+            long u = a.getLong(x + k), v = b.getLong(y + k);
+            if (u != v)
+                return Long.compareUnsigned(u, v);
+        }
+        for (; k < keyLength; k++) {
+            int u = a.get(x + k) & 0xff, v = b.get(y + k) & 0xff;
+            if (u != v)
+                return u - v;
+        }
+
+        return 0;
+    }
+
+    private void swap(ByteBuffer b, int i, int j) {
+        int x = i * recordSize, y = j * recordSize;
+
+        int k = 0;
+        for (; k + Long.BYTES <= recordSize; k += Long.BYTES) {
+            long t = b.getLong(x + k);
+            b.putLong(x + k, b.getLong(y + k));
+            b.putLong(y + k, t);
+        }
+        for (; k < recordSize; k++) {
+            byte t = b.get(x + k);
+            b.put(x + k, b.get(y + k));
+            b.put(y + k, t);
+        }
+    }
+
+    /**
+     * Copy count records, starting at record i of src, to record j onwards of dst. Single records are copied a word at
+     * a time, longer ranges in one bulk put, through views of the two buffers.
+     */
+    private void copy(ByteBuffer src, int i, ByteBuffer dst, int j, int count) {
+        int x = i * recordSize, y = j * recordSize, bytes = count * recordSize;
+
+        if (count > 1) {
+            ByteBuffer from = src.duplicate(), to = dst.duplicate();
+            from.limit(x + bytes).position(x);
+            to.position(y);
+            to.put(from);
+            return;
+        }
+
+        int k = 0;
+        for (; k + Long.BYTES <= bytes; k += Long.BYTES)
+            dst.putLong(y + k, src.getLong(x + k));
+        for (; k < bytes; k++)
+            dst.put(y + k, src.get(x + k));
+    }
+
+    public static void main(String[] args) {
+        int recordSize = 20, records = 100_000;
+
+        // 4 bytes of payload, followed by 12 bytes of key and 4 more bytes of payload
+        ByteBuffer buffer = ByteBuffer.allocateDirect(recordSize * records);
+        for (int i = 0; i < records; i++) {
+            buffer.putInt(i)
+                    .putLong(ThreadLocalRandom.current().nextLong(0, 1000))
+                    .putInt(ThreadLocalRandom.current().nextInt())
+                    .putInt(i);
+        }
+        buffer.flip();
+
+        RecordSort sorter = new RecordSort(recordSize, 4, 12);
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.capacity()).put(buffer.duplicate());
+        copy.flip();
+
+        sorter.quickSort(buffer);
+        sorter.mergeSort(copy, ByteBuffer.allocateDirect(copy.capacity()));
+
+        for (int i = recordSize; i < buffer.capacity(); i += recordSize) {
+            assert buffer.getLong(i - recordSize + 4) <= buffer.getLong(i + 4);
+            assert copy.getLong(i - recordSize + 4) <= copy.getLong(i + 4);
+        }
+
+        System.out.println("Sorted " + records + " records.");
+    }
+}
@@ -0,0 +1,792 @@
+package io.imulab.review.java.sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parallel sample sort. A fork/join quick or merge sort only has two tasks after the first partition or before the
+ * last merge, so on a machine with many cores most of them sit idle near the top of the recursion. Sample sort splits
+ * the array into many buckets in one go instead, every core busy from the start.
+ *
+ * Idea: draw a random sample of {@link #OVERSAMPLING} items per bucket, sort it, and take every OVERSAMPLING-th item
+ * as a splitter, which cuts the array into buckets of about the same size. Then:
+ *
+ *  - Classify: the array is cut into stripes, and for each stripe a task counts how many of its items fall into each
+ *    bucket. An item finds its bucket by walking down a complete binary search tree of the splitters, laid out like a
+ *    heap: j = 2j + (item > tree[j]), which the JIT compiles to a compare and a conditional add, no branch.
+ *  - Scatter: the counts give every (bucket, stripe) pair its own range in the aux array, so the stripes are
+ *    classified again and copied over in parallel, without any synchronisation.
+ *  - Sort the buckets concurrently: each is copied back and sorted with the sequential sorts, or sample sorted in turn
+ *    if it is still large.
+ *
+ * Keys that repeat a lot show up as equal splitters. The duplicates are dropped, and each remaining splitter gets an
+ * equality bucket of its own, for the items equal to it. Those buckets are done as soon as they are copied back, so a
+ * heavy key takes one bucket out of the sort instead of unbalancing it.
+ *
+ * Primitive buckets are sorted with {@link Quick}. Object buckets are sorted with {@link Merge}, and as the scatter
+ * keeps the order of the items within a bucket, the object sort is stable. Both need an aux array as large as the
+ * input.
+ */
+public class SampleSort {
+
+    /**
+     * Arrays (and buckets) of at most this many items are sorted sequentially.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * At most 2^8 buckets, besides the equality buckets, per round.
+     */
+    private static final int MAX_LOG_BUCKETS = 8;
+
+    /**
+     * Sample items drawn per bucket.
+     */
+    private static final int OVERSAMPLING = 16;
+
+    /**
+     * Stripes per worker of the pool, so that a slow worker does not hold up the others.
+     */
+    private static final int STRIPES_PER_WORKER = 4;
+
+    static <E extends Comparable<E>> void parallelSort(E[] elements) {
+        parallelSort(elements, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Stable sort of the array on the fork/join pool.
+     *
+     * @param elements  array to sort
+     * @param threshold arrays and buckets of at most this many items are sorted sequentially
+     * @param pool      the pool to run the tasks on
+     * @param <E>       type of array element
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Comparable<E>> void parallelSort(E[] elements, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            Merge.sort(elements);
+            return;
+        }
+
+        E[] aux = (E[]) new Comparable[elements.length];
+        pool.invoke(new ObjectSortTask<>(elements, aux, 0, elements.length - 1, threshold));
+    }
+
+    static void parallelSort(int[] elements) {
+        parallelSort(elements, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    static void parallelSort(int[] elements, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            Quick.sort(elements);
+            return;
+        }
+
+        pool.invoke(new IntSortTask(elements, new int[elements.length], 0, elements.length - 1, threshold));
+    }
+
+    static void parallelSort(long[] elements) {
+        parallelSort(elements, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    static void parallelSort(long[] elements, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            Quick.sort(elements);
+            return;
+        }
+
+        pool.invoke(new LongSortTask(elements, new long[elements.length], 0, elements.length - 1, threshold));
+    }
+
+    static void parallelSort(double[] elements) {
+        parallelSort(elements, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    static void parallelSort(double[] elements, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            Quick.sort(elements);
+            return;
+        }
+
+        pool.invoke(new DoubleSortTask(elements, new double[elements.length], 0, elements.length - 1, threshold));
+    }
+
+    /**
+     * @return  the log of the number of buckets to split n items into, so that they come out near the threshold.
+     */
+    private static int logBuckets(int n, int threshold) {
+        int buckets = (n - 1) / threshold + 1;
+        int log = 32 - Integer.numberOfLeadingZeros(buckets - 1);
+        return Math.max(1, Math.min(MAX_LOG_BUCKETS, log));
+    }
+
+    /**
+     * @return  the number of stripes to classify n items in.
+     */
+    private static int stripes(int n, int threshold, ForkJoinPool pool) {
+        int workers = (pool == null) ? 1 : pool.getParallelism();
+        return Math.max(1, Math.min(workers * STRIPES_PER_WORKER, n / threshold));
+    }
+
+    /**
+     * @return  the log of the size of a complete binary tree, plus one, that has room for m splitters.
+     */
+    private static int treeLog(int m) {
+        return 32 - Integer.numberOfLeadingZeros(m);
+    }
+
+    /**
+     * Turn the counts of each bucket in each stripe into where the stripe's items of the bucket start, bucket by
+     * bucket and stripe by stripe within a bucket, so that items keep their order within a bucket.
+     *
+     * @return  where each bucket starts, and at the end hi + 1.
+     */
+    private static int[] offsets(int[][] counts, int lo) {
+        int buckets = counts[0].length;
+        int[] starts = new int[buckets + 1];
+
+        int sum = lo;
+        for (int b = 0; b < buckets; b++) {
+            starts[b] = sum;
+            for (int[] stripe : counts) {
+                int c = stripe[b];
+                stripe[b] = sum;
+                sum += c;
+            }
+        }
+        starts[buckets] = sum;
+
+        return starts;
+    }
+
+    /**
+     * Splitters of one round, as a sorted array without duplicates and as a search tree.
+     */
+    private static final class IntSplitters {
+
+        private final int[] splitters;
+        private final int m;
+
+        /**
+         * The splitters padded with the largest one to 2^log - 1 items, laid out as a heap, index 0 not used.
+         */
+        private final int[] tree;
+        private final int log;
+
+        private final boolean equality;
+
+        IntSplitters(int[] a, int lo, int hi, int logBuckets) {
+            int k = 1 << logBuckets;
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int[] sample = new int[OVERSAMPLING * k];
+            for (int i = 0; i < sample.length; i++)
+                sample[i] = a[random.nextInt(lo, hi + 1)];
+            Quick.sort(sample);
+
+            // every OVERSAMPLING-th item of the sample, without duplicates
+            int[] s = new int[k - 1];
+            int m = 0;
+            boolean duplicates = false;
+            for (int i = 1; i < k; i++) {
+                int v = sample[i * OVERSAMPLING];
+                if (m > 0 && v <= s[m - 1])
+                    duplicates = true;
+                else
+                    s[m++] = v;
+            }
+
+            this.splitters = s;
+            this.m = m;
+            this.equality = duplicates;
+            this.log = treeLog(m);
+
+            int[] padded = Arrays.copyOf(s, (1 << log) - 1);
+            Arrays.fill(padded, m, padded.length, s[m - 1]);
+            this.tree = new int[1 << log];
+            build(padded, 1, 0, padded.length);
+        }
+
+        /**
+         * Put the middle of sorted[lo, hi) at node j, and the halves under its children.
+         */
+        private void build(int[] sorted, int j, int lo, int hi) {
+            if (lo >= hi)
+                return;
+
+            int mid = (lo + hi) >>> 1;
+            tree[j] = sorted[mid];
+            build(sorted, 2 * j, lo, mid);
+            build(sorted, 2 * j + 1, mid + 1, hi);
+        }
+
+        int buckets() {
+            return equality ? 2 * m + 1 : m + 1;
+        }
+
+        boolean isEquality(int bucket) {
+            return equality && (bucket & 1) == 1;
+        }
+
+        /**
+         * Bucket b holds the items in (s[b-1], s[b]], or with equality buckets, bucket 2b those in (s[b-1], s[b]) and
+         * bucket 2b+1 those equal to s[b].
+         */
+        int classify(int v) {
+            int[] tree = this.tree;
+
+            int j = 1;
+            for (int l = 0; l < log; l++)
+                j = 2 * j + (v > tree[j] ? 1 : 0);
+
+            // the number of splitters less than v, padding aside
+            int b = Math.min(j - tree.length, m);
+            if (equality)
+                b = 2 * b + ((b < m && v == splitters[b]) ? 1 : 0);
+            return b;
+        }
+    }
+
+    /**
+     * Sorts a[lo..hi] in one round of classify and scatter into aux[lo..hi], then sorts the buckets in parallel.
+     */
+    private static final class IntSortTask extends RecursiveAction {
+
+        private final int[] a, aux;
+        private final int lo, hi, threshold;
+
+        IntSortTask(int[] a, int[] aux, int lo, int hi, int threshold) {
+            this.a = a;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int n = hi - lo + 1;
+            if (n <= threshold) {
+                Quick.sort(a, lo, hi);
+                return;
+            }
+
+            IntSplitters splitters = new IntSplitters(a, lo, hi, logBuckets(n, threshold));
+            int stripes = stripes(n, threshold, getPool());
+            int[][] counts = new int[stripes][splitters.buckets()];
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] count = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        count[splitters.classify(a[i])]++;
+                }));
+            }
+            invokeAll(tasks);
+
+            int[] starts = offsets(counts, lo);
+
+            tasks.clear();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] next = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        aux[next[splitters.classify(a[i])]++] = a[i];
+                }));
+            }
+            invokeAll(tasks);
+
+            tasks.clear();
+            for (int b = 0; b < starts.length - 1; b++) {
+                int start = starts[b], end = starts[b + 1] - 1;
+                if (start > end)
+                    continue;
+
+                boolean done = splitters.isEquality(b);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    System.arraycopy(aux, start, a, start, end - start + 1);
+                    if (done)
+                        return;
+
+                    // a bucket as large as the whole range would not make progress
+                    if (end - start + 1 > threshold && end - start + 1 < n)
+                        new IntSortTask(a, aux, start, end, threshold).compute();
+                    else
+                        Quick.sort(a, start, end);
+                }));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private static final class LongSplitters {
+
+        private final long[] splitters;
+        private final int m;
+
+        private final long[] tree;
+        private final int log;
+
+        private final boolean equality;
+
+        LongSplitters(long[] a, int lo, int hi, int logBuckets) {
+            int k = 1 << logBuckets;
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long[] sample = new long[OVERSAMPLING * k];
+            for (int i = 0; i < sample.length; i++)
+                sample[i] = a[random.nextInt(lo, hi + 1)];
+            Quick.sort(sample);
+
+            long[] s = new long[k - 1];
+            int m = 0;
+            boolean duplicates = false;
+            for (int i = 1; i < k; i++) {
+                long v = sample[i * OVERSAMPLING];
+                if (m > 0 && v <= s[m - 1])
+                    duplicates = true;
+                else
+                    s[m++] = v;
+            }
+
+            this.splitters = s;
+            this.m = m;
+            this.equality = duplicates;
+            this.log = treeLog(m);
+
+            long[] padded = Arrays.copyOf(s, (1 << log) - 1);
+            Arrays.fill(padded, m, padded.length, s[m - 1]);
+            this.tree = new long[1 << log];
+            build(padded, 1, 0, padded.length);
+        }
+
+        private void build(long[] sorted, int j, int lo, int hi) {
+            if (lo >= hi)
+                return;
+
+            int mid = (lo + hi) >>> 1;
+            tree[j] = sorted[mid];
+            build(sorted, 2 * j, lo, mid);
+            build(sorted, 2 * j + 1, mid + 1, hi);
+        }
+
+        int buckets() {
+            return equality ? 2 * m + 1 : m + 1;
+        }
+
+        boolean isEquality(int bucket) {
+            return equality && (bucket & 1) == 1;
+        }
+
+        int classify(long v) {
+            long[] tree = this.tree;
+
+            int j = 1;
+            for (int l = 0; l < log; l++)
+                j = 2 * j + (v > tree[j] ? 1 : 0);
+
+            int b = Math.min(j - tree.length, m);
+            if (equality)
+                b = 2 * b + ((b < m && v == splitters[b]) ? 1 : 0);
+            return b;
+        }
+    }
+
+    private static final class LongSortTask extends RecursiveAction {
+
+        private final long[] a, aux;
+        private final int lo, hi, threshold;
+
+        LongSortTask(long[] a, long[] aux, int lo, int hi, int threshold) {
+            this.a = a;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int n = hi - lo + 1;
+            if (n <= threshold) {
+                Quick.sort(a, lo, hi);
+                return;
+            }
+
+            LongSplitters splitters = new LongSplitters(a, lo, hi, logBuckets(n, threshold));
+            int stripes = stripes(n, threshold, getPool());
+            int[][] counts = new int[stripes][splitters.buckets()];
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] count = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        count[splitters.classify(a[i])]++;
+                }));
+            }
+            invokeAll(tasks);
+
+            int[] starts = offsets(counts, lo);
+
+            tasks.clear();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] next = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        aux[next[splitters.classify(a[i])]++] = a[i];
+                }));
+            }
+            invokeAll(tasks);
+
+            tasks.clear();
+            for (int b = 0; b < starts.length - 1; b++) {
+                int start = starts[b], end = starts[b + 1] - 1;
+                if (start > end)
+                    continue;
+
+                boolean done = splitters.isEquality(b);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    System.arraycopy(aux, start, a, start, end - start + 1);
+                    if (done)
+                        return;
+
+                    if (end - start + 1 > threshold && end - start + 1 < n)
+                        new LongSortTask(a, aux, start, end, threshold).compute();
+                    else
+                        Quick.sort(a, start, end);
+                }));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private static final class DoubleSplitters {
+
+        private final double[] splitters;
+        private final int m;
+
+        private final double[] tree;
+        private final int log;
+
+        private final boolean equality;
+
+        DoubleSplitters(double[] a, int lo, int hi, int logBuckets) {
+            int k = 1 << logBuckets;
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double[] sample = new double[OVERSAMPLING * k];
+            for (int i = 0; i < sample.length; i++)
+                sample[i] = a[random.nextInt(lo, hi + 1)];
+            Quick.sort(sample);
+
+            double[] s = new double[k - 1];
+            int m = 0;
+            boolean duplicates = false;
+            for (int i = 1; i < k; i++) {
+                double v = sample[i * OVERSAMPLING];
+                if (m > 0 && Double.compare(v, s[m - 1]) <= 0)
+                    duplicates = true;
+                else
+                    s[m++] = v;
+            }
+
+            this.splitters = s;
+            this.m = m;
+            this.equality = duplicates;
+            this.log = treeLog(m);
+
+            double[] padded = Arrays.copyOf(s, (1 << log) - 1);
+            Arrays.fill(padded, m, padded.length, s[m - 1]);
+            this.tree = new double[1 << log];
+            build(padded, 1, 0, padded.length);
+        }
+
+        private void build(double[] sorted, int j, int lo, int hi) {
+            if (lo >= hi)
+                return;
+
+            int mid = (lo + hi) >>> 1;
+            tree[j] = sorted[mid];
+            build(sorted, 2 * j, lo, mid);
+            build(sorted, 2 * j + 1, mid + 1, hi);
+        }
+
+        int buckets() {
+            return equality ? 2 * m + 1 : m + 1;
+        }
+
+        boolean isEquality(int bucket) {
+            return equality && (bucket & 1) == 1;
+        }
+
+        int classify(double v) {
+            double[] tree = this.tree;
+
+            int j = 1;
+            for (int l = 0; l < log; l++)
+                j = 2 * j + (Double.compare(v, tree[j]) > 0 ? 1 : 0);
+
+            int b = Math.min(j - tree.length, m);
+            if (equality)
+                b = 2 * b + ((b < m && Double.compare(v, splitters[b]) == 0) ? 1 : 0);
+            return b;
+        }
+    }
+
+    private static final class DoubleSortTask extends RecursiveAction {
+
+        private final double[] a, aux;
+        private final int lo, hi, threshold;
+
+        DoubleSortTask(double[] a, double[] aux, int lo, int hi, int threshold) {
+            this.a = a;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int n = hi - lo + 1;
+            if (n <= threshold) {
+                Quick.sort(a, lo, hi);
+                return;
+            }
+
+            DoubleSplitters splitters = new DoubleSplitters(a, lo, hi, logBuckets(n, threshold));
+            int stripes = stripes(n, threshold, getPool());
+            int[][] counts = new int[stripes][splitters.buckets()];
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] count = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        count[splitters.classify(a[i])]++;
+                }));
+            }
+            invokeAll(tasks);
+
+            int[] starts = offsets(counts, lo);
+
+            tasks.clear();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] next = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        aux[next[splitters.classify(a[i])]++] = a[i];
+                }));
+            }
+            invokeAll(tasks);
+
+            tasks.clear();
+            for (int b = 0; b < starts.length - 1; b++) {
+                int start = starts[b], end = starts[b + 1] - 1;
+                if (start > end)
+                    continue;
+
+                boolean done = splitters.isEquality(b);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    System.arraycopy(aux, start, a, start, end - start + 1);
+                    if (done)
+                        return;
+
+                    if (end - start + 1 > threshold && end - start + 1 < n)
+                        new DoubleSortTask(a, aux, start, end, threshold).compute();
+                    else
+                        Quick.sort(a, start, end);
+                }));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Same as the primitive splitters, ordered by compareTo.
+     */
+    private static final class ObjectSplitters<E extends Comparable<E>> {
+
+        private final E[] splitters;
+        private final int m;
+        private final E[] tree;
+        private final int log;
+
+        private final boolean equality;
+
+        @SuppressWarnings("unchecked")
+        ObjectSplitters(E[] a, int lo, int hi, int logBuckets) {
+            int k = 1 << logBuckets;
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            E[] sample = (E[]) new Comparable[OVERSAMPLING * k];
+            for (int i = 0; i < sample.length; i++)
+                sample[i] = a[random.nextInt(lo, hi + 1)];
+            Quick.sort(sample);
+
+            // every OVERSAMPLING-th item of the sample, without duplicates
+            E[] s = (E[]) new Comparable[k - 1];
+            int m = 0;
+            boolean duplicates = false;
+            for (int i = 1; i < k; i++) {
+                E v = sample[i * OVERSAMPLING];
+                if (m > 0 && v.compareTo(s[m - 1]) <= 0)
+                    duplicates = true;
+                else
+                    s[m++] = v;
+            }
+
+            this.splitters = s;
+            this.m = m;
+            this.equality = duplicates;
+            this.log = treeLog(m);
+
+            E[] padded = Arrays.copyOf(s, (1 << log) - 1);
+            Arrays.fill(padded, m, padded.length, s[m - 1]);
+            this.tree = (E[]) new Comparable[1 << log];
+            build(padded, 1, 0, padded.length);
+        }
+
+        private void build(E[] sorted, int j, int lo, int hi) {
+            if (lo >= hi)
+                return;
+
+            int mid = (lo + hi) >>> 1;
+            tree[j] = sorted[mid];
+            build(sorted, 2 * j, lo, mid);
+            build(sorted, 2 * j + 1, mid + 1, hi);
+        }
+
+        int buckets() {
+            return equality ? 2 * m + 1 : m + 1;
+        }
+
+        boolean isEquality(int bucket) {
+            return equality && (bucket & 1) == 1;
+        }
+
+        int classify(E v) {
+            E[] tree = this.tree;
+
+            int j = 1;
+            for (int l = 0; l < log; l++)
+                j = 2 * j + (v.compareTo(tree[j]) > 0 ? 1 : 0);
+
+            int b = Math.min(j - tree.length, m);
+            if (equality)
+                b = 2 * b + ((b < m && v.compareTo(splitters[b]) == 0) ? 1 : 0);
+            return b;
+        }
+    }
+
+    /**
+     * Same as the primitive sort tasks, with {@link Merge} for the buckets, which keeps the sort stable.
+     */
+    private static final class ObjectSortTask<E extends Comparable<E>> extends RecursiveAction {
+
+        private final E[] a, aux;
+        private final int lo, hi, threshold;
+
+        ObjectSortTask(E[] a, E[] aux, int lo, int hi, int threshold) {
+            this.a = a;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int n = hi - lo + 1;
+            if (n <= threshold) {
+                Merge.sort(a, aux, lo, hi);
+                return;
+            }
+
+            ObjectSplitters<E> splitters = new ObjectSplitters<>(a, lo, hi, logBuckets(n, threshold));
+            int stripes = stripes(n, threshold, getPool());
+            int[][] counts = new int[stripes][splitters.buckets()];
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] count = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        count[splitters.classify(a[i])]++;
+                }));
+            }
+            invokeAll(tasks);
+
+            int[] starts = offsets(counts, lo);
+
+            tasks.clear();
+            for (int t = 0; t < stripes; t++) {
+                int from = lo + (int) ((long) n * t / stripes), to = lo + (int) ((long) n * (t + 1) / stripes);
+                int[] next = counts[t];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int i = from; i < to; i++)
+                        aux[next[splitters.classify(a[i])]++] = a[i];
+                }));
+            }
+            invokeAll(tasks);
+
+            tasks.clear();
+            for (int b = 0; b < starts.length - 1; b++) {
+                int start = starts[b], end = starts[b + 1] - 1;
+                if (start > end)
+                    continue;
+
+                boolean done = splitters.isEquality(b);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    System.arraycopy(aux, start, a, start, end - start + 1);
+                    if (done)
+                        return;
+
+                    if (end - start + 1 > threshold && end - start + 1 < n)
+                        new ObjectSortTask<>(a, aux, start, end, threshold).compute();
+                    else
+                        Merge.sort(a, aux, start, end);
+                }));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    @SuppressWarnings("Duplicates")
+    public static void main(String[] args) {
+        Integer[] array = Utility.randomIntArray(1 << 16);
+        parallelSort(array, 1 << 10, ForkJoinPool.commonPool());
+        assert Utility.isSorted(array);
+
+        // a handful of distinct keys ends up in the equality buckets
+        int[] keys = new int[1 << 22];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = ThreadLocalRandom.current().nextInt(4);
+        parallelSort(keys);
+        assert Utility.isSorted(keys);
+
+        System.out.println("Sorted " + array.length + " objects and " + keys.length + " ints");
+    }
+}
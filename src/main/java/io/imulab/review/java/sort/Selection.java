@@ -9,12 +9,18 @@ package io.imulab.review.java.sort;
 public class Selection {
 
     static <E extends Comparable<E>> void sort(E[] elements) {
+        sort(elements, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, SortMetrics metrics) {
+        metrics.begin("Selection", elements.length);
         for (int i = 0; i < elements.length; i++) {
-            Utility.swap(elements, i, min(elements, i));
+            Utility.swap(elements, i, min(elements, i, metrics), metrics);
         }
+        metrics.end();
     }
 
-    private static <E extends Comparable<E>> int min(E[] elements, int startInclusive) {
+    private static <E extends Comparable<E>> int min(E[] elements, int startInclusive, SortMetrics metrics) {
         assert elements.length > 0;
         assert startInclusive < elements.length;
 
@@ -22,7 +28,7 @@ public class Selection {
         E min = elements[startInclusive];
 
         for (int i = startInclusive; i < elements.length; i++) {
-            if (elements[i].compareTo(min) < 0) {
+            if (Utility.compare(elements[i], min, metrics) < 0) {
                 index = i;
                 min = elements[i];
             }
@@ -31,6 +37,39 @@ public class Selection {
         return index;
     }
 
+    static void sort(int[] elements) {
+        for (int i = 0; i < elements.length; i++) {
+            int min = i;
+            for (int j = i + 1; j < elements.length; j++) {
+                if (elements[j] < elements[min])
+                    min = j;
+            }
+            Utility.swap(elements, i, min);
+        }
+    }
+
+    static void sort(long[] elements) {
+        for (int i = 0; i < elements.length; i++) {
+            int min = i;
+            for (int j = i + 1; j < elements.length; j++) {
+                if (elements[j] < elements[min])
+                    min = j;
+            }
+            Utility.swap(elements, i, min);
+        }
+    }
+
+    static void sort(double[] elements) {
+        for (int i = 0; i < elements.length; i++) {
+            int min = i;
+            for (int j = i + 1; j < elements.length; j++) {
+                if (Double.compare(elements[j], elements[min]) < 0)
+                    min = j;
+            }
+            Utility.swap(elements, i, min);
+        }
+    }
+
     @SuppressWarnings("Duplicates")
     public static void main(String[] args) {
         Integer[] array = Utility.randomIntArray(32);
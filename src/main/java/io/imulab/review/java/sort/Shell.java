@@ -1,6 +1,9 @@
 package io.imulab.review.java.sort;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToLongFunction;
 
 /**
  * A sorting algorithm that skip sorts every h-th element in the array. Combined with a decreasing sequence of h which
@@ -9,28 +12,179 @@ import java.util.*;
  *
  * It is very difficult to determine the overall complexity of the algorithm. It is generally believed, with 3x+1
  * sequence, to be O(N^(3/2)) in the worst case. But generally, it will be much better than that.
+ *
+ * h-sorting sorts h interleaved chains (a[c], a[c+h], a[c+2h], ...), which are independent of each other. The parallel
+ * variant splits the chains of the large gaps into blocks of adjacent chains and h-sorts the blocks as fork/join
+ * tasks. The small gaps, where chains are long and few, stay sequential.
  */
 public class Shell {
 
+    /**
+     * Arrays of at most this many items are sorted sequentially by the parallel sort, and blocks of chains holding at
+     * most this many items are not split further.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Blocks of chains are never split below this many adjacent chains, so that two tasks seldom write to the same
+     * cache line. Gaps smaller than twice this are h-sorted sequentially.
+     */
+    static final int PARALLEL_MIN_CHAINS = 64;
+
     static <E extends Comparable<E>> void sort(E[] elements, Sequence sequenceGenerator) {
+        sort(elements, sequenceGenerator, SortMetrics.NONE);
+    }
+
+    static <E extends Comparable<E>> void sort(E[] elements, Sequence sequenceGenerator, SortMetrics metrics) {
         assert elements.length > 0;
 
         if (elements.length == 1)
             return;
 
-        if (sequenceGenerator == null)
-            sequenceGenerator = new ThreePlusOne();
-        Iterator<Integer> skipSequence = sequenceGenerator.generate(elements.length);
+        metrics.begin("Shell", elements.length);
+
+        int[] gaps = gaps(sequenceGenerator);
+        for (int g = count(gaps, elements.length) - 1; g >= 0; g--)
+            hSort(elements, gaps[g], 0, gaps[g], metrics);
+
+        metrics.end();
+    }
+
+    static void sort(int[] elements, Sequence sequenceGenerator) {
+        if (elements.length <= 1)
+            return;
+
+        int[] gaps = gaps(sequenceGenerator);
+        for (int g = count(gaps, elements.length) - 1; g >= 0; g--)
+            hSort(elements, gaps[g], 0, gaps[g]);
+    }
+
+    static void sort(long[] elements, Sequence sequenceGenerator) {
+        if (elements.length <= 1)
+            return;
 
-        while (skipSequence.hasNext()) {
-            int h = skipSequence.next();
+        int[] gaps = gaps(sequenceGenerator);
+        for (int g = count(gaps, elements.length) - 1; g >= 0; g--) {
+            int h = gaps[g];
 
             for (int i = h; i < elements.length; i++) {
-                insert(elements, i, h);
+                long v = elements[i];
+                int j = i;
+                for (; j >= h && elements[j - h] > v; j -= h)
+                    elements[j] = elements[j - h];
+                elements[j] = v;
             }
         }
     }
 
+    static void sort(double[] elements, Sequence sequenceGenerator) {
+        if (elements.length <= 1)
+            return;
+
+        int[] gaps = gaps(sequenceGenerator);
+        for (int g = count(gaps, elements.length) - 1; g >= 0; g--) {
+            int h = gaps[g];
+
+            for (int i = h; i < elements.length; i++) {
+                double v = elements[i];
+                int j = i;
+                for (; j >= h && Double.compare(elements[j - h], v) > 0; j -= h)
+                    elements[j] = elements[j - h];
+                elements[j] = v;
+            }
+        }
+    }
+
+    static <E extends Comparable<E>> void parallelSort(E[] elements, Sequence sequenceGenerator) {
+        parallelSort(elements, sequenceGenerator, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sort the array, h-sorting the chains of large gaps on the fork/join pool.
+     *
+     * @param elements          array to sort
+     * @param sequenceGenerator gap sequence, 3x+1 if null
+     * @param threshold         arrays and blocks of chains of at most this many items are not split further
+     * @param pool              the pool to run the tasks on
+     * @param <E>               type of array element
+     */
+    static <E extends Comparable<E>> void parallelSort(E[] elements, Sequence sequenceGenerator, int threshold,
+                                                       ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            sort(elements, sequenceGenerator);
+            return;
+        }
+
+        int[] gaps = gaps(sequenceGenerator);
+        for (int g = count(gaps, elements.length) - 1; g >= 0; g--) {
+            int h = gaps[g];
+            if (h >= 2 * PARALLEL_MIN_CHAINS)
+                pool.invoke(new ChainsTask<>(elements, h, 0, h, threshold));
+            else
+                hSort(elements, h, 0, h, SortMetrics.NONE);
+        }
+    }
+
+    static void parallelSort(int[] elements, Sequence sequenceGenerator) {
+        parallelSort(elements, sequenceGenerator, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    static void parallelSort(int[] elements, Sequence sequenceGenerator, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+
+        if (elements.length <= threshold) {
+            sort(elements, sequenceGenerator);
+            return;
+        }
+
+        int[] gaps = gaps(sequenceGenerator);
+        for (int g = count(gaps, elements.length) - 1; g >= 0; g--) {
+            int h = gaps[g];
+            if (h >= 2 * PARALLEL_MIN_CHAINS)
+                pool.invoke(new IntChainsTask(elements, h, 0, h, threshold));
+            else
+                hSort(elements, h, 0, h);
+        }
+    }
+
+    /**
+     * @return  the gap table of the sequence, or of 3x+1 if there is none.
+     */
+    private static int[] gaps(Sequence sequenceGenerator) {
+        return (sequenceGenerator == null) ? ThreePlusOne.GAPS : sequenceGenerator.gaps();
+    }
+
+    /**
+     * @return  the number of gaps smaller than n, which are the gaps used to sort n items.
+     */
+    private static int count(int[] gaps, int n) {
+        int k = 0;
+        while (k < gaps.length && gaps[k] < n)
+            k++;
+        return k;
+    }
+
+    /**
+     * h-sort the chains starting at from (inclusive) to to (exclusive). The chains are walked one row of h items at a
+     * time, so that a block of adjacent chains is processed left to right through memory.
+     *
+     * @param elements  array to h-sort
+     * @param h         the current skip number
+     * @param from      first chain (inclusive)
+     * @param to        last chain (exclusive), at most h
+     * @param metrics   where to report compares and swaps
+     * @param <E>       type of the array element
+     */
+    private static <E extends Comparable<E>> void hSort(E[] elements, int h, int from, int to, SortMetrics metrics) {
+        for (int row = h; row < elements.length; row += h) {
+            int end = row + Math.min(to, elements.length - row);
+            for (int i = row + from; i < end; i++)
+                insert(elements, i, h, metrics);
+        }
+    }
+
     /**
      * Perform the insertion operation. Move the cursor item from right to left into correct place. Compare only with
      * the h-th element to its left and only swap when they are out of order.
@@ -38,55 +192,132 @@ public class Shell {
      * @param elements  array to perform insertion on.
      * @param c         the current cursor index
      * @param h         the current skip number
+     * @param metrics   where to report compares and swaps
      * @param <E>       type of the array element
      */
-    private static <E extends Comparable<E>> void insert(E[] elements, int c, int h) {
-        for (int j = c; j >= h && elements[j - h].compareTo(elements[j]) > 0; j -= h) {
-            Utility.swap(elements, j, j - h);
+    private static <E extends Comparable<E>> void insert(E[] elements, int c, int h, SortMetrics metrics) {
+        for (int j = c; j >= h && Utility.compare(elements[j - h], elements[j], metrics) > 0; j -= h) {
+            Utility.swap(elements, j, j - h, metrics);
         }
     }
 
     /**
-     * Sequence generator for the shell sort. Returns a queue whose elements are in descending order and stands
-     * for the skip number in shell sort.
+     * Same as {@link #hSort(Comparable[], int, int, int, SortMetrics)}, holding the cursor item aside and shifting.
      */
-    private interface Sequence {
-        Iterator<Integer> generate(int size);
+    private static void hSort(int[] elements, int h, int from, int to) {
+        for (int row = h; row < elements.length; row += h) {
+            int end = row + Math.min(to, elements.length - row);
+            for (int i = row + from; i < end; i++) {
+                int v = elements[i];
+                int j = i;
+                for (; j >= h && elements[j - h] > v; j -= h)
+                    elements[j] = elements[j - h];
+                elements[j] = v;
+            }
+        }
     }
 
     /**
-     * An sequence implementing the 3*x+1 sequence.
+     * h-sorts the chains from (inclusive) to to (exclusive), splitting them in halves until a block is small enough.
      */
-    private static class ThreePlusOne implements Sequence {
+    private static class ChainsTask<E extends Comparable<E>> extends RecursiveAction {
+
+        private final E[] a;
+        private final int h, from, to, threshold;
+
+        ChainsTask(E[] a, int h, int from, int to, int threshold) {
+            this.a = a;
+            this.h = h;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
         @Override
-        public Iterator<Integer> generate(int size) {
-            Deque<Integer> deq = new ArrayDeque<>();
-            int h = 1;
+        protected void compute() {
+            int chains = to - from;
+            if (chains < 2 * PARALLEL_MIN_CHAINS || (long) chains * (a.length / h) <= threshold) {
+                hSort(a, h, from, to, SortMetrics.NONE);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChainsTask<>(a, h, from, mid, threshold), new ChainsTask<>(a, h, mid, to, threshold));
+        }
+    }
 
-            while (h < size) {
-                deq.offer(h);
-                h = h * 3 + 1;
+    private static class IntChainsTask extends RecursiveAction {
+
+        private final int[] a;
+        private final int h, from, to, threshold;
+
+        IntChainsTask(int[] a, int h, int from, int to, int threshold) {
+            this.a = a;
+            this.h = h;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int chains = to - from;
+            if (chains < 2 * PARALLEL_MIN_CHAINS || (long) chains * (a.length / h) <= threshold) {
+                hSort(a, h, from, to);
+                return;
             }
 
-            return deq.descendingIterator();
+            int mid = (from + to) >>> 1;
+            invokeAll(new IntChainsTask(a, h, from, mid, threshold), new IntChainsTask(a, h, mid, to, threshold));
         }
     }
 
     /**
-     * A sequence implementing 2^x-1.
+     * Gap sequence for the shell sort. The gaps are computed once per sequence, as a table of all its gaps that fit an
+     * int, in ascending order and starting with 1. A sort of N items uses the gaps smaller than N, largest first.
      */
-    private static class PowerOfTwoMinusOne implements Sequence {
+    interface Sequence {
+
+        /**
+         * @return  the shared gap table, which must not be modified.
+         */
+        int[] gaps();
+    }
+
+    /**
+     * @return  the table of gap(0), gap(1), ... up to the last one that fits an int.
+     */
+    private static int[] table(IntToLongFunction gap) {
+        int[] gaps = new int[64];
+        int n = 0;
+        for (long h; n < gaps.length && (h = gap.applyAsLong(n)) <= Integer.MAX_VALUE; n++)
+            gaps[n] = (int) h;
+        return Arrays.copyOf(gaps, n);
+    }
+
+    /**
+     * An sequence implementing the 3*x+1 sequence.
+     */
+    static class ThreePlusOne implements Sequence {
+
+        private static final int[] GAPS = table(k -> ((long) Math.pow(3, k + 1) - 1) / 2);
+
         @Override
-        public Iterator<Integer> generate(int size) {
-            Deque<Integer> deq = new ArrayDeque<>();
-            int h = 1;
+        public int[] gaps() {
+            return GAPS;
+        }
+    }
 
-            while (h < size) {
-                deq.offer(h);
-                h = (h + 1) * 2 - 1;
-            }
+    /**
+     * A sequence implementing 2^x-1.
+     */
+    static class PowerOfTwoMinusOne implements Sequence {
+
+        private static final int[] GAPS = table(k -> (1L << (k + 1)) - 1);
 
-            return deq.descendingIterator();
+        @Override
+        public int[] gaps() {
+            return GAPS;
         }
     }
 
@@ -95,18 +326,42 @@ public class Shell {
      *
      * https://en.wikipedia.org/wiki/Shellsort
      */
-    private static class Sedgewick1985 implements Sequence {
+    static class Sedgewick1985 implements Sequence {
+
+        private static final int[] GAPS = table(k -> (k == 0) ? 1 : (1L << (2 * k)) + 3 * (1L << (k - 1)) + 1);
+
         @Override
-        public Iterator<Integer> generate(int size) {
-            Deque<Integer> deq = new ArrayDeque<>();
-            int h = 1;
+        public int[] gaps() {
+            return GAPS;
+        }
+    }
 
-            for (int i = 1; h < size; i++) {
-                deq.offer(h);
-                h = 4^i + 3*2^(i-1) + 1;
-            }
+    /**
+     * Ciura's (2001) empirically found sequence, extended by multiplying by 2.25 past its last known gap.
+     */
+    static class Ciura implements Sequence {
+
+        private static final int[] KNOWN = {1, 4, 10, 23, 57, 132, 301, 701, 1750};
+
+        private static final int[] GAPS = table(k -> (k < KNOWN.length) ?
+                KNOWN[k] : (long) (KNOWN[KNOWN.length - 1] * Math.pow(2.25, k - KNOWN.length + 1)));
+
+        @Override
+        public int[] gaps() {
+            return GAPS;
+        }
+    }
 
-            return deq.descendingIterator();
+    /**
+     * Tokuda's (1992) sequence of ceil((9^k - 4^k) / (5 * 4^(k-1))).
+     */
+    static class Tokuda implements Sequence {
+
+        private static final int[] GAPS = table(k -> (long) Math.ceil((9 * Math.pow(2.25, k) - 4) / 5));
+
+        @Override
+        public int[] gaps() {
+            return GAPS;
         }
     }
 
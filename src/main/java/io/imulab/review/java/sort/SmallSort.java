@@ -0,0 +1,296 @@
+package io.imulab.review.java.sort;
+
+/**
+ * The base case shared by the recursive sorts: sub arrays of at most {@link #CUTOFF} items are handed here instead of
+ * being partitioned or split any further.
+ *
+ * Primitive sub arrays of at most {@link #MAX_NETWORK} items are sorted by a sorting network, a fixed sequence of
+ * compare-exchanges that does not depend on the data. For ints and longs each compare-exchange is a min and a max,
+ * which the JIT turns into conditional moves, so there are no branches to mispredict. The networks are the smallest
+ * known for each n, from the tables of Knuth (TAOCP vol. 3, 5.3.4) and Dobbelaere's list of sorting networks: 60
+ * comparators for 16 items, against 63 for Batcher's odd-even merge sort. Sizes up to 12 items are proven optimal.
+ * The 15 item network is the 16 item one with the comparators on the last index dropped, as if it held +infinity.
+ * Larger primitive sub arrays fall back to insertion sort.
+ *
+ * Objects use binary insertion sort: the insertion point is binary searched, and the items after it are shifted with
+ * one System.arraycopy. An item already in place costs a single compare. It is stable, since an item is always inserted
+ * after the items equal to it.
+ *
+ * The cutoff is 16 unless the io.imulab.review.java.sort.cutoff system property says otherwise.
+ */
+public class SmallSort {
+
+    /**
+     * Sub arrays of at most this many items are sorted here by the recursive sorts.
+     */
+    static final int CUTOFF = Math.max(1, Integer.getInteger("io.imulab.review.java.sort.cutoff", 16));
+
+    /**
+     * The largest primitive sub array sorted by a network.
+     */
+    static final int MAX_NETWORK = 16;
+
+    /**
+     * The network for n items, at index n, as pairs of indexes (i, j), with i < j, to compare-exchange in order. One
+     * line per layer; the pairs of a layer touch distinct indexes.
+     */
+    private static final int[][] NETWORKS = {
+            {},
+            {},
+            // 2 items: 1 comparator
+            {
+                    0, 1
+            },
+            // 3 items: 3 comparators, 3 layers
+            {
+                    0, 2,
+                    0, 1,
+                    1, 2
+            },
+            // 4 items: 5 comparators, 3 layers
+            {
+                    0, 2, 1, 3,
+                    0, 1, 2, 3,
+                    1, 2
+            },
+            // 5 items: 9 comparators, 5 layers
+            {
+                    0, 3, 1, 4,
+                    0, 2, 1, 3,
+                    0, 1, 2, 4,
+                    1, 2, 3, 4,
+                    2, 3
+            },
+            // 6 items: 12 comparators, 5 layers
+            {
+                    0, 5, 1, 3, 2, 4,
+                    1, 2, 3, 4,
+                    0, 3, 2, 5,
+                    0, 1, 2, 3, 4, 5,
+                    1, 2, 3, 4
+            },
+            // 7 items: 16 comparators, 6 layers
+            {
+                    0, 6, 2, 3, 4, 5,
+                    0, 2, 1, 4, 3, 6,
+                    0, 1, 2, 5, 3, 4,
+                    1, 2, 4, 6,
+                    2, 3, 4, 5,
+                    1, 2, 3, 4, 5, 6
+            },
+            // 8 items: 19 comparators, 6 layers
+            {
+                    0, 2, 1, 3, 4, 6, 5, 7,
+                    0, 4, 1, 5, 2, 6, 3, 7,
+                    0, 1, 2, 3, 4, 5, 6, 7,
+                    2, 4, 3, 5,
+                    1, 4, 3, 6,
+                    1, 2, 3, 4, 5, 6
+            },
+            // 9 items: 25 comparators, 7 layers
+            {
+                    0, 3, 1, 7, 2, 5, 4, 8,
+                    0, 7, 2, 4, 3, 8, 5, 6,
+                    0, 2, 1, 3, 4, 5, 7, 8,
+                    1, 4, 3, 6, 5, 7,
+                    0, 1, 2, 4, 3, 5, 6, 8,
+                    2, 3, 4, 5, 6, 7,
+                    1, 2, 3, 4, 5, 6
+            },
+            // 10 items: 29 comparators, 8 layers
+            {
+                    0, 8, 1, 9, 2, 7, 3, 5, 4, 6,
+                    0, 2, 1, 4, 5, 8, 7, 9,
+                    0, 3, 2, 4, 5, 7, 6, 9,
+                    0, 1, 3, 6, 8, 9,
+                    1, 5, 2, 3, 4, 8, 6, 7,
+                    1, 2, 3, 5, 4, 6, 7, 8,
+                    2, 3, 4, 5, 6, 7,
+                    3, 4, 5, 6
+            },
+            // 11 items: 35 comparators, 8 layers
+            {
+                    0, 9, 1, 6, 2, 4, 3, 7, 5, 8,
+                    0, 1, 3, 5, 4, 10, 6, 9, 7, 8,
+                    1, 3, 2, 5, 4, 7, 8, 10,
+                    0, 4, 1, 2, 3, 7, 5, 9, 6, 8,
+                    0, 1, 2, 6, 4, 5, 7, 8, 9, 10,
+                    2, 4, 3, 6, 5, 7, 8, 9,
+                    1, 2, 3, 4, 5, 6, 7, 8,
+                    2, 3, 4, 5, 6, 7
+            },
+            // 12 items: 39 comparators, 9 layers
+            {
+                    0, 8, 1, 7, 2, 6, 3, 11, 4, 10, 5, 9,
+                    0, 1, 2, 5, 3, 4, 6, 9, 7, 8, 10, 11,
+                    0, 2, 1, 6, 5, 10, 9, 11,
+                    0, 3, 1, 2, 4, 6, 5, 7, 8, 11, 9, 10,
+                    1, 4, 3, 5, 6, 8, 7, 10,
+                    1, 3, 2, 5, 6, 9, 8, 10,
+                    2, 3, 4, 5, 6, 7, 8, 9,
+                    4, 6, 5, 7,
+                    3, 4, 5, 6, 7, 8
+            },
+            // 13 items: 45 comparators, 10 layers
+            {
+                    0, 12, 1, 10, 2, 9, 3, 7, 5, 11, 6, 8,
+                    1, 6, 2, 3, 4, 11, 7, 9, 8, 10,
+                    0, 4, 1, 2, 3, 6, 7, 8, 9, 10, 11, 12,
+                    4, 6, 5, 9, 8, 11, 10, 12,
+                    0, 5, 3, 8, 4, 7, 6, 11, 9, 10,
+                    0, 1, 2, 5, 6, 9, 7, 8, 10, 11,
+                    1, 3, 2, 4, 5, 6, 9, 10,
+                    1, 2, 3, 4, 5, 7, 6, 8,
+                    2, 3, 4, 5, 6, 7, 8, 9,
+                    3, 4, 5, 6
+            },
+            // 14 items: 51 comparators, 10 layers
+            {
+                    0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13,
+                    0, 2, 1, 3, 4, 8, 5, 9, 10, 12, 11, 13,
+                    0, 4, 1, 2, 3, 7, 5, 8, 6, 10, 9, 13, 11, 12,
+                    0, 6, 1, 5, 3, 9, 4, 10, 7, 13, 8, 12,
+                    2, 10, 3, 11, 4, 6, 7, 9,
+                    1, 3, 2, 8, 5, 11, 6, 7, 10, 12,
+                    1, 4, 2, 6, 3, 5, 7, 11, 8, 10, 9, 12,
+                    2, 4, 3, 6, 5, 8, 7, 10, 9, 11,
+                    3, 4, 5, 6, 7, 8, 9, 10,
+                    6, 7
+            },
+            // 15 items: 56 comparators, 10 layers
+            {
+                    0, 13, 1, 12, 3, 14, 4, 8, 5, 6, 7, 11, 9, 10,
+                    0, 5, 1, 7, 2, 9, 3, 4, 6, 13, 8, 14, 11, 12,
+                    0, 1, 2, 3, 4, 5, 6, 8, 7, 9, 10, 11, 12, 13,
+                    0, 2, 1, 3, 4, 10, 5, 11, 6, 7, 8, 9, 12, 14,
+                    1, 2, 3, 12, 4, 6, 5, 7, 8, 10, 9, 11, 13, 14,
+                    1, 4, 2, 6, 5, 8, 7, 10, 9, 13, 11, 14,
+                    2, 4, 3, 6, 9, 12, 11, 13,
+                    3, 5, 6, 8, 7, 9, 10, 12,
+                    3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+                    6, 7, 8, 9
+            },
+            // 16 items: 60 comparators, 10 layers
+            {
+                    0, 13, 1, 12, 2, 15, 3, 14, 4, 8, 5, 6, 7, 11, 9, 10,
+                    0, 5, 1, 7, 2, 9, 3, 4, 6, 13, 8, 14, 10, 15, 11, 12,
+                    0, 1, 2, 3, 4, 5, 6, 8, 7, 9, 10, 11, 12, 13, 14, 15,
+                    0, 2, 1, 3, 4, 10, 5, 11, 6, 7, 8, 9, 12, 14, 13, 15,
+                    1, 2, 3, 12, 4, 6, 5, 7, 8, 10, 9, 11, 13, 14,
+                    1, 4, 2, 6, 5, 8, 7, 10, 9, 13, 11, 14,
+                    2, 4, 3, 6, 9, 12, 11, 13,
+                    3, 5, 6, 8, 7, 9, 10, 12,
+                    3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+                    6, 7, 8, 9
+            }
+    };
+
+    /**
+     * Sort the sub array from lower bound to upper bound with binary insertion sort.
+     *
+     * @param elements  array
+     * @param lo        lower bound (inclusive)
+     * @param hi        upper bound (inclusive)
+     * @param metrics   where to report compares and moves
+     * @param <E>       type of array element
+     */
+    static <E extends Comparable<E>> void sort(E[] elements, int lo, int hi, SortMetrics metrics) {
+        for (int i = lo + 1; i <= hi; i++) {
+            E v = elements[i];
+            if (Utility.compare(elements[i - 1], v, metrics) <= 0)
+                continue;
+
+            // the first item greater than v in a[lo..i-2], a[i-1] being greater already
+            int left = lo, right = i - 1;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (Utility.compare(v, elements[mid], metrics) < 0)
+                    right = mid;
+                else
+                    left = mid + 1;
+            }
+
+            System.arraycopy(elements, left, elements, left + 1, i - left);
+            elements[left] = v;
+            metrics.copy(i - left + 1);
+        }
+    }
+
+    static void sort(int[] elements, int lo, int hi) {
+        int n = hi - lo + 1;
+        if (n > MAX_NETWORK) {
+            Insertion.sort(elements, lo, hi);
+            return;
+        }
+
+        int[] pairs = NETWORKS[n];
+        for (int k = 0; k < pairs.length; k += 2) {
+            int i = lo + pairs[k], j = lo + pairs[k + 1];
+            int x = elements[i], y = elements[j];
+            elements[i] = Math.min(x, y);
+            elements[j] = Math.max(x, y);
+        }
+    }
+
+    static void sort(long[] elements, int lo, int hi) {
+        int n = hi - lo + 1;
+        if (n > MAX_NETWORK) {
+            Insertion.sort(elements, lo, hi);
+            return;
+        }
+
+        int[] pairs = NETWORKS[n];
+        for (int k = 0; k < pairs.length; k += 2) {
+            int i = lo + pairs[k], j = lo + pairs[k + 1];
+            long x = elements[i], y = elements[j];
+            elements[i] = Math.min(x, y);
+            elements[j] = Math.max(x, y);
+        }
+    }
+
+    /**
+     * Math.min and Math.max do not order doubles like {@link Double#compare(double, double)} does (NaN would be copied
+     * over the other item), so the double network branches.
+     */
+    static void sort(double[] elements, int lo, int hi) {
+        int n = hi - lo + 1;
+        if (n > MAX_NETWORK) {
+            Insertion.sort(elements, lo, hi);
+            return;
+        }
+
+        int[] pairs = NETWORKS[n];
+        for (int k = 0; k < pairs.length; k += 2) {
+            int i = lo + pairs[k], j = lo + pairs[k + 1];
+            double x = elements[i], y = elements[j];
+            if (Double.compare(x, y) > 0) {
+                elements[i] = y;
+                elements[j] = x;
+            }
+        }
+    }
+
+    /**
+     * Check every network with the 0-1 principle: a network that sorts all 2^n sequences of zeros and ones sorts
+     * every sequence of n items.
+     */
+    public static void main(String[] args) {
+        for (int n = 0; n <= MAX_NETWORK; n++) {
+            int[] a = new int[n];
+            for (int bits = 0; bits < (1 << n); bits++) {
+                for (int i = 0; i < n; i++)
+                    a[i] = (bits >>> i) & 1;
+                sort(a, 0, n - 1);
+                if (!Utility.isSorted(a))
+                    throw new AssertionError("network for " + n + " items does not sort " +
+                            Integer.toBinaryString(bits));
+            }
+            System.out.println(n + " items: " + NETWORKS[n].length / 2 + " comparators");
+        }
+
+        Integer[] array = Utility.randomIntArray(CUTOFF);
+        sort(array, 0, array.length - 1, SortMetrics.NONE);
+        assert Utility.isSorted(array);
+        Utility.printArray(array);
+    }
+}
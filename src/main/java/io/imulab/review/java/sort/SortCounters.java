@@ -0,0 +1,137 @@
+package io.imulab.review.java.sort;
+
+import java.util.Arrays;
+
+/**
+ * Counts the work of the sorts on the current thread. Every thread has its own counters, see {@link #current()}, so
+ * counting is a plain field increment with no synchronization. Counts add up until {@link #reset()}.
+ *
+ * The recursion levels form a histogram: entry k is the number of recursive calls made at level k.
+ *
+ * If a JFR recording has the io.imulab.review.java.sort.Sort event enabled, a {@link SortEvent} is also committed for
+ * every sort, carrying the counts of that sort alone.
+ */
+public final class SortCounters implements SortMetrics {
+
+    private static final int MAX_LEVEL = 63;
+
+    private static final ThreadLocal<SortCounters> CURRENT = ThreadLocal.withInitial(SortCounters::new);
+
+    private long sorts;
+    private long compares;
+    private long swaps;
+    private long copies;
+    private final long[] levels = new long[MAX_LEVEL + 1];
+    private int maxLevel;
+
+    private SortEvent event;
+    private long comparesAtBegin, swapsAtBegin, copiesAtBegin;
+
+    private SortCounters() {
+    }
+
+    /**
+     * @return  the counters of the current thread.
+     */
+    public static SortCounters current() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public void begin(String algorithm, int size) {
+        sorts++;
+
+        SortEvent e = new SortEvent();
+        if (e.isEnabled()) {
+            e.algorithm = algorithm;
+            e.size = size;
+            e.begin();
+
+            comparesAtBegin = compares;
+            swapsAtBegin = swaps;
+            copiesAtBegin = copies;
+            maxLevel = 0;
+            event = e;
+        }
+    }
+
+    @Override
+    public void end() {
+        SortEvent e = event;
+        if (e == null)
+            return;
+
+        event = null;
+        e.end();
+        if (e.shouldCommit()) {
+            e.compares = compares - comparesAtBegin;
+            e.swaps = swaps - swapsAtBegin;
+            e.copies = copies - copiesAtBegin;
+            e.maxLevel = maxLevel;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void compare() {
+        compares++;
+    }
+
+    @Override
+    public void swap() {
+        swaps++;
+    }
+
+    @Override
+    public void copy(int items) {
+        copies += items;
+    }
+
+    @Override
+    public void enter(int level) {
+        if (level > MAX_LEVEL)
+            level = MAX_LEVEL;
+        levels[level]++;
+        if (level > maxLevel)
+            maxLevel = level;
+    }
+
+    public long sorts() {
+        return sorts;
+    }
+
+    public long compares() {
+        return compares;
+    }
+
+    public long swaps() {
+        return swaps;
+    }
+
+    public long copies() {
+        return copies;
+    }
+
+    /**
+     * @return  the histogram of recursion levels, up to the deepest level seen. The last entry also counts any calls
+     *          deeper than 63 levels.
+     */
+    public long[] levels() {
+        int n = levels.length;
+        while (n > 0 && levels[n - 1] == 0)
+            n--;
+        return Arrays.copyOf(levels, n);
+    }
+
+    public void reset() {
+        sorts = compares = swaps = copies = 0;
+        Arrays.fill(levels, 0);
+        maxLevel = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "sorts=" + sorts + ", compares=" + compares + ", swaps=" + swaps + ", copies=" + copies +
+                ", levels=" + Arrays.toString(levels());
+    }
+}
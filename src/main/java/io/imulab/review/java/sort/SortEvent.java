@@ -0,0 +1,37 @@
+package io.imulab.review.java.sort;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for one sort, committed by {@link SortCounters}. Disabled unless a recording enables
+ * io.imulab.review.java.sort.Sort, in which case it only costs its allocation. jdk.jfr is why the build needs Java 11.
+ */
+@Name("io.imulab.review.java.sort.Sort")
+@Label("Sort")
+@Category("Sort")
+@Description("A sort and the work it did")
+@StackTrace(false)
+class SortEvent extends jdk.jfr.Event {
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Size")
+    int size;
+
+    @Label("Compares")
+    long compares;
+
+    @Label("Swaps")
+    long swaps;
+
+    @Label("Copies")
+    long copies;
+
+    @Label("Max Level")
+    int maxLevel;
+}
@@ -0,0 +1,48 @@
+package io.imulab.review.java.sort;
+
+/**
+ * A sink the sorters report their work to: compares, swaps, items copied to and from aux arrays, and the recursion
+ * level of every recursive call.
+ *
+ * Sorters report to {@link #NONE} unless handed something else. Its methods are empty, so once the JIT has inlined
+ * them the instrumented sort is as fast as an uninstrumented one. {@link SortCounters} is the implementation for
+ * actually collecting numbers.
+ */
+public interface SortMetrics {
+
+    /**
+     * Discards everything.
+     */
+    SortMetrics NONE = new SortMetrics() {
+    };
+
+    /**
+     * A top level sort of size items starts.
+     */
+    default void begin(String algorithm, int size) {
+    }
+
+    /**
+     * The sort started by the last {@link #begin(String, int)} has finished.
+     */
+    default void end() {
+    }
+
+    default void compare() {
+    }
+
+    default void swap() {
+    }
+
+    /**
+     * Items were moved by assignment rather than by a swap, e.g. into the aux array of merge sort and back.
+     */
+    default void copy(int items) {
+    }
+
+    /**
+     * A recursive call at the given level started, the top level call being level 0.
+     */
+    default void enter(int level) {
+    }
+}
@@ -0,0 +1,209 @@
+package io.imulab.review.java.sort;
+
+import java.util.Arrays;
+
+/**
+ * Owns the aux buffers of the merge, radix and argsort paths, the count tables of the radix sorts and the samples of
+ * {@link Sorts#profile}, so that sorting many arrays one after the other allocates no arrays once the buffers have
+ * grown to the largest array seen.
+ *
+ * Buffers grow by half again their size when too small, and are kept until {@link #release()}. Object merges use the
+ * half buffer merge of {@link Merge#sort(Comparable[], Comparable[])}, so the object buffer only grows to N/2; it is
+ * cleared after each sort, so that it does not keep the sorted items reachable, as is the object sample.
+ *
+ * A session is not thread safe. {@link #local()} hands out one per thread, for request paths that sort on many
+ * threads.
+ */
+public class SortSession {
+
+    private static final ThreadLocal<SortSession> LOCAL = ThreadLocal.withInitial(SortSession::new);
+
+    private Comparable[] objects = new Comparable[0];
+    private int[] ints = new int[0];
+    private long[] longs = new long[0];
+    private long[] longsAux = new long[0];
+    private double[] doubles = new double[0];
+
+    /**
+     * Count tables of the radix sorts.
+     */
+    private final int[][] counts = Radix.countTable();
+
+    /**
+     * Samples of {@link Sorts#profile}, {@link Sorts#SAMPLE_SIZE} items each.
+     */
+    private final Comparable[] objectSample = new Comparable[Sorts.SAMPLE_SIZE];
+    private final int[] intSample = new int[Sorts.SAMPLE_SIZE];
+    private final long[] longSample = new long[Sorts.SAMPLE_SIZE];
+    private final double[] doubleSample = new double[Sorts.SAMPLE_SIZE];
+
+    /**
+     * @return  the session of the current thread.
+     */
+    public static SortSession local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Stable merge sort.
+     */
+    public <E extends Comparable<E>> void mergeSort(E[] elements) {
+        E[] aux = objects(elements.length / 2);
+        try {
+            Merge.sort(elements, aux);
+        } finally {
+            Arrays.fill(aux, 0, elements.length / 2, null);
+        }
+    }
+
+    /**
+     * Stable bottom up merge sort.
+     */
+    public <E extends Comparable<E>> void bottomUpMergeSort(E[] elements) {
+        E[] aux = objects(elements.length / 2);
+        try {
+            Merge.bottomUpSort(elements, aux);
+        } finally {
+            Arrays.fill(aux, 0, elements.length / 2, null);
+        }
+    }
+
+    public void mergeSort(int[] elements) {
+        Merge.sort(elements, ints(elements.length));
+    }
+
+    public void mergeSort(long[] elements) {
+        Merge.sort(elements, longs(elements.length));
+    }
+
+    public void mergeSort(double[] elements) {
+        Merge.sort(elements, doubles(elements.length));
+    }
+
+    public void radixSort(int[] elements) {
+        Radix.sort(elements, ints(elements.length), counts);
+    }
+
+    public void radixSort(long[] elements) {
+        Radix.sort(elements, longs(elements.length), counts);
+    }
+
+    public void radixSort(double[] elements) {
+        Radix.sort(elements, longs(elements.length), longsAux(elements.length), counts);
+    }
+
+    /**
+     * Stable argsort, see {@link ArgSort#mergeSort(int[])}.
+     *
+     * @param keys  one key per row
+     * @param order filled with the row indexes in key order, at least as long as the keys
+     */
+    public void argSort(int[] keys, int[] order) {
+        checkOrder(keys.length, order);
+        ArgSort.mergeSort(keys, order, ints(keys.length));
+    }
+
+    public void argSort(long[] keys, int[] order) {
+        checkOrder(keys.length, order);
+        ArgSort.mergeSort(keys, order, ints(keys.length));
+    }
+
+    public void argSort(double[] keys, int[] order) {
+        checkOrder(keys.length, order);
+        ArgSort.mergeSort(keys, order, ints(keys.length));
+    }
+
+    /**
+     * Drop the buffers, such as after sorting an unusually large array.
+     */
+    public void release() {
+        objects = new Comparable[0];
+        ints = new int[0];
+        longs = new long[0];
+        longsAux = new long[0];
+        doubles = new double[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    <E extends Comparable<E>> E[] objectSample() {
+        return (E[]) objectSample;
+    }
+
+    int[] intSample() {
+        return intSample;
+    }
+
+    long[] longSample() {
+        return longSample;
+    }
+
+    double[] doubleSample() {
+        return doubleSample;
+    }
+
+    private static void checkOrder(int n, int[] order) {
+        if (order.length < n)
+            throw new IllegalArgumentException("order array is shorter than the keys");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Comparable<E>> E[] objects(int n) {
+        if (objects.length < n)
+            objects = new Comparable[grow(objects.length, n)];
+        return (E[]) objects;
+    }
+
+    private int[] ints(int n) {
+        if (ints.length < n)
+            ints = new int[grow(ints.length, n)];
+        return ints;
+    }
+
+    private long[] longs(int n) {
+        if (longs.length < n)
+            longs = new long[grow(longs.length, n)];
+        return longs;
+    }
+
+    private long[] longsAux(int n) {
+        if (longsAux.length < n)
+            longsAux = new long[grow(longsAux.length, n)];
+        return longsAux;
+    }
+
+    private double[] doubles(int n) {
+        if (doubles.length < n)
+            doubles = new double[grow(doubles.length, n)];
+        return doubles;
+    }
+
+    /**
+     * @return  the new size of a buffer of the given size that has to hold n items.
+     */
+    private static int grow(int size, int n) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(n, size + (long) (size >> 1)));
+    }
+
+    public static void main(String[] args) {
+        SortSession session = local();
+
+        // after the first round, the buffers are large enough and the sorts allocate nothing
+        for (int round = 0; round < 3; round++) {
+            Integer[] array = Utility.randomIntArray(1000);
+            session.mergeSort(array);
+            assert Utility.isSorted(array);
+
+            int[] keys = new int[1000];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = array[i] % 10;
+            int[] order = new int[keys.length];
+            session.argSort(keys, order);
+            session.radixSort(keys);
+            assert Utility.isSorted(keys);
+        }
+
+        Integer[] array = Utility.randomIntArray(32);
+        session.bottomUpMergeSort(array);
+        Utility.printArray(array);
+    }
+}
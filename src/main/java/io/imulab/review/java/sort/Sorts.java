@@ -0,0 +1,558 @@
+package io.imulab.review.java.sort;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The public entry point to the sorts of this package. Each call takes a cheap profile of the input and hands it to
+ * the sort that suits it best, returning which one that was.
+ *
+ * The profile looks at:
+ *
+ *  - Size: up to {@link SmallSort#CUTOFF} items go straight to {@link SmallSort}.
+ *  - Presortedness: the number of descents (a[i] > a[i+1]) and ascents (a[i] < a[i+1]), counted by a scan that stops
+ *    once both pass N/{@link #RUN_RATIO}, so it only runs to the end on input that is nearly in order; and an estimate
+ *    of the fraction of inverted pairs from a sample of pairs.
+ *  - Duplicates: the fraction of a sorted sample that equals its neighbour.
+ *
+ * and dispatches on it, together with the type of the items:
+ *
+ *  - Sorted input is left alone, and primitive input in descending order is reversed.
+ *  - Primitives with few descents go to {@link Merge}, whose merges are skipped when the halves are in order. Other
+ *    primitives go to {@link Radix} from a few hundred items on, where it beats {@link Quick}, and to {@link Quick}
+ *    below that.
+ *  - Objects with few descents or few ascents, or with hardly any inversions, go to {@link NaturalMerge}, which merges
+ *    the runs it finds. Other objects go to {@link Merge}, or if stability is not needed, to {@link Quick}, three-way
+ *    when the sample is heavy with duplicates.
+ *  - Arrays of at least {@link #PARALLEL_THRESHOLD} items go to {@link SampleSort} instead, if the common fork/join
+ *    pool has more than one worker.
+ *
+ * The profile samples and the aux arrays and count tables of the merge and radix sorts are taken from the
+ * {@link SortSession} of the calling thread, so sorting many arrays in a row does not allocate them again and again.
+ *
+ * {@link Insertion}, {@link Shell} and {@link Heap} are never picked: {@link SmallSort} covers what insertion sort is
+ * good for, and the others lose to the sorts above on every input profiled here.
+ */
+public class Sorts {
+
+    /**
+     * A scan for presortedness stops once there are more than N/RUN_RATIO descents and as many ascents.
+     */
+    static final int RUN_RATIO = 64;
+
+    /**
+     * Pairs of items compared for the inversion estimate, and items drawn for the duplicates estimate.
+     */
+    static final int SAMPLE_SIZE = 128;
+
+    /**
+     * Objects with fewer inverted pairs than this in the sample are nearly in order.
+     */
+    static final double NEARLY_SORTED = 0.01;
+
+    /**
+     * Objects with more equal neighbours than this in the sorted sample are heavy with duplicates.
+     */
+    static final double MANY_DUPLICATES = 0.5;
+
+    /**
+     * Int arrays of at least this many items are radix sorted rather than quick sorted.
+     */
+    static final int RADIX_THRESHOLD = 1 << 9;
+
+    /**
+     * Same for long and double arrays, which take twice as many radix passes.
+     */
+    static final int WIDE_RADIX_THRESHOLD = 1 << 10;
+
+    /**
+     * Arrays of at least this many items are sorted in parallel, if there are workers to do it.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * The sort picked for an input.
+     */
+    public enum Strategy {
+        ALREADY_SORTED,
+        REVERSED,
+        SMALL,
+        QUICK,
+        QUICK_THREE_WAY,
+        MERGE,
+        NATURAL_MERGE,
+        RADIX,
+        PARALLEL_SAMPLE
+    }
+
+    /**
+     * What the dispatch knows about an input.
+     */
+    public static final class Profile {
+
+        private final int size;
+        private final int descents;
+        private final int ascents;
+        private final double inversions;
+        private final double duplicates;
+
+        Profile(int size, int descents, int ascents, double inversions, double duplicates) {
+            this.size = size;
+            this.descents = descents;
+            this.ascents = ascents;
+            this.inversions = inversions;
+            this.duplicates = duplicates;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return  the number of i with a[i] > a[i+1], or if there are many, a number past N/{@link #RUN_RATIO}.
+         */
+        public int descents() {
+            return descents;
+        }
+
+        /**
+         * @return  the number of i with a[i] < a[i+1], or if there are many, a number past N/{@link #RUN_RATIO}.
+         */
+        public int ascents() {
+            return ascents;
+        }
+
+        /**
+         * @return  the estimated fraction of pairs out of order: 0 for sorted, about 0.5 for random and 1 for reversed
+         *          input.
+         */
+        public double inversions() {
+            return inversions;
+        }
+
+        /**
+         * @return  the estimated fraction of items equal to another item.
+         */
+        public double duplicates() {
+            return duplicates;
+        }
+
+        boolean sorted() {
+            return descents == 0;
+        }
+
+        boolean descending() {
+            return ascents == 0;
+        }
+
+        boolean fewDescents() {
+            return descents <= size / RUN_RATIO;
+        }
+
+        boolean fewAscents() {
+            return ascents <= size / RUN_RATIO;
+        }
+
+        @Override
+        public String toString() {
+            return "Profile{size=" + size + ", descents=" + descents + ", ascents=" + ascents +
+                    ", inversions=" + inversions + ", duplicates=" + duplicates + '}';
+        }
+    }
+
+    /**
+     * Stable sort of the array.
+     *
+     * @param elements  array to sort
+     * @param <E>       type of array element
+     * @return          the sort that was used
+     */
+    public static <E extends Comparable<E>> Strategy sort(E[] elements) {
+        return sort(elements, true);
+    }
+
+    /**
+     * Sort the array.
+     *
+     * @param elements  array to sort
+     * @param stable    whether equal items have to keep their order
+     * @param <E>       type of array element
+     * @return          the sort that was used
+     */
+    public static <E extends Comparable<E>> Strategy sort(E[] elements, boolean stable) {
+        SortSession session = SortSession.local();
+        Strategy strategy = choose(profile(elements, session.objectSample()), stable);
+
+        switch (strategy) {
+            case ALREADY_SORTED:
+                break;
+            case SMALL:
+                SmallSort.sort(elements, 0, elements.length - 1, SortMetrics.NONE);
+                break;
+            case NATURAL_MERGE:
+                NaturalMerge.sort(elements);
+                break;
+            case PARALLEL_SAMPLE:
+                SampleSort.parallelSort(elements);
+                break;
+            case MERGE:
+                session.mergeSort(elements);
+                break;
+            case QUICK_THREE_WAY:
+                Quick.threeWaySort(elements);
+                break;
+            case QUICK:
+                Quick.sort(elements);
+                break;
+            default:
+                throw new AssertionError(strategy);
+        }
+
+        return strategy;
+    }
+
+    public static Strategy sort(int[] elements) {
+        SortSession session = SortSession.local();
+        Strategy strategy = choose(profile(elements, session.intSample()), RADIX_THRESHOLD);
+
+        switch (strategy) {
+            case ALREADY_SORTED:
+                break;
+            case REVERSED:
+                reverse(elements);
+                break;
+            case SMALL:
+                SmallSort.sort(elements, 0, elements.length - 1);
+                break;
+            case MERGE:
+                session.mergeSort(elements);
+                break;
+            case PARALLEL_SAMPLE:
+                SampleSort.parallelSort(elements);
+                break;
+            case RADIX:
+                session.radixSort(elements);
+                break;
+            case QUICK:
+                Quick.sort(elements);
+                break;
+            default:
+                throw new AssertionError(strategy);
+        }
+
+        return strategy;
+    }
+
+    public static Strategy sort(long[] elements) {
+        SortSession session = SortSession.local();
+        Strategy strategy = choose(profile(elements, session.longSample()), WIDE_RADIX_THRESHOLD);
+
+        switch (strategy) {
+            case ALREADY_SORTED:
+                break;
+            case REVERSED:
+                reverse(elements);
+                break;
+            case SMALL:
+                SmallSort.sort(elements, 0, elements.length - 1);
+                break;
+            case MERGE:
+                session.mergeSort(elements);
+                break;
+            case PARALLEL_SAMPLE:
+                SampleSort.parallelSort(elements);
+                break;
+            case RADIX:
+                session.radixSort(elements);
+                break;
+            case QUICK:
+                Quick.sort(elements);
+                break;
+            default:
+                throw new AssertionError(strategy);
+        }
+
+        return strategy;
+    }
+
+    /**
+     * Doubles are ordered by {@link Double#compare(double, double)}: -0.0 before 0.0, and NaN last.
+     */
+    public static Strategy sort(double[] elements) {
+        SortSession session = SortSession.local();
+        Strategy strategy = choose(profile(elements, session.doubleSample()), WIDE_RADIX_THRESHOLD);
+
+        switch (strategy) {
+            case ALREADY_SORTED:
+                break;
+            case REVERSED:
+                reverse(elements);
+                break;
+            case SMALL:
+                SmallSort.sort(elements, 0, elements.length - 1);
+                break;
+            case MERGE:
+                session.mergeSort(elements);
+                break;
+            case PARALLEL_SAMPLE:
+                SampleSort.parallelSort(elements);
+                break;
+            case RADIX:
+                session.radixSort(elements);
+                break;
+            case QUICK:
+                Quick.sort(elements);
+                break;
+            default:
+                throw new AssertionError(strategy);
+        }
+
+        return strategy;
+    }
+
+    private static Strategy choose(Profile p, boolean stable) {
+        if (p.sorted())
+            return Strategy.ALREADY_SORTED;
+        if (p.size() <= SmallSort.CUTOFF)
+            return Strategy.SMALL;
+        if (p.fewDescents() || p.fewAscents() || p.inversions() < NEARLY_SORTED)
+            return Strategy.NATURAL_MERGE;
+        if (parallel(p.size()))
+            return Strategy.PARALLEL_SAMPLE;
+        if (stable)
+            return Strategy.MERGE;
+        return (p.duplicates() > MANY_DUPLICATES) ? Strategy.QUICK_THREE_WAY : Strategy.QUICK;
+    }
+
+    private static Strategy choose(Profile p, int radixThreshold) {
+        if (p.sorted())
+            return Strategy.ALREADY_SORTED;
+        if (p.descending())
+            return Strategy.REVERSED;
+        if (p.size() <= SmallSort.CUTOFF)
+            return Strategy.SMALL;
+        if (p.fewDescents())
+            return Strategy.MERGE;
+        if (parallel(p.size()))
+            return Strategy.PARALLEL_SAMPLE;
+        return (p.size() >= radixThreshold) ? Strategy.RADIX : Strategy.QUICK;
+    }
+
+    private static boolean parallel(int n) {
+        return n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /*
+     * Profiles. The samples are drawn from a generator seeded with the size, so the same input always gets the same
+     * profile, and the same sort.
+     */
+
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<E>> Profile profile(E[] a) {
+        return profile(a, (E[]) new Comparable[SAMPLE_SIZE]);
+    }
+
+    /**
+     * @param sample    buffer for the sample, of {@link #SAMPLE_SIZE} items, which is cleared again
+     */
+    static <E extends Comparable<E>> Profile profile(E[] a, E[] sample) {
+        assert sample.length == SAMPLE_SIZE;
+        int n = a.length, limit = n / RUN_RATIO;
+
+        int descents = 0, ascents = 0;
+        for (int i = 1; i < n && (descents <= limit || ascents <= limit); i++) {
+            int c = a[i - 1].compareTo(a[i]);
+            if (c > 0)
+                descents++;
+            else if (c < 0)
+                ascents++;
+        }
+        if (descents == 0 || n <= SmallSort.CUTOFF)
+            return new Profile(n, descents, ascents, 0, 0);
+
+        SplittableRandom random = new SplittableRandom(n);
+        int inverted = 0;
+        for (int s = 0; s < SAMPLE_SIZE; s++) {
+            int i = random.nextInt(n), j = random.nextInt(n);
+            if (a[Math.min(i, j)].compareTo(a[Math.max(i, j)]) > 0)
+                inverted++;
+        }
+
+        for (int s = 0; s < SAMPLE_SIZE; s++)
+            sample[s] = a[random.nextInt(n)];
+        Quick.sort(sample);
+        int equal = 0;
+        for (int s = 1; s < SAMPLE_SIZE; s++) {
+            if (sample[s - 1].compareTo(sample[s]) == 0)
+                equal++;
+        }
+        Arrays.fill(sample, null);
+
+        return new Profile(n, descents, ascents, (double) inverted / SAMPLE_SIZE, (double) equal / SAMPLE_SIZE);
+    }
+
+    public static Profile profile(int[] a) {
+        return profile(a, new int[SAMPLE_SIZE]);
+    }
+
+    /**
+     * @param sample    buffer for the sample, of {@link #SAMPLE_SIZE} items
+     */
+    static Profile profile(int[] a, int[] sample) {
+        assert sample.length == SAMPLE_SIZE;
+        int n = a.length, limit = n / RUN_RATIO;
+
+        int descents = 0, ascents = 0;
+        for (int i = 1; i < n && (descents <= limit || ascents <= limit); i++) {
+            if (a[i - 1] > a[i])
+                descents++;
+            else if (a[i - 1] < a[i])
+                ascents++;
+        }
+        if (descents == 0 || n <= SmallSort.CUTOFF)
+            return new Profile(n, descents, ascents, 0, 0);
+
+        SplittableRandom random = new SplittableRandom(n);
+        int inverted = 0;
+        for (int s = 0; s < SAMPLE_SIZE; s++) {
+            int i = random.nextInt(n), j = random.nextInt(n);
+            if (a[Math.min(i, j)] > a[Math.max(i, j)])
+                inverted++;
+        }
+
+        for (int s = 0; s < SAMPLE_SIZE; s++)
+            sample[s] = a[random.nextInt(n)];
+        Quick.sort(sample);
+        int equal = 0;
+        for (int s = 1; s < SAMPLE_SIZE; s++) {
+            if (sample[s - 1] == sample[s])
+                equal++;
+        }
+
+        return new Profile(n, descents, ascents, (double) inverted / SAMPLE_SIZE, (double) equal / SAMPLE_SIZE);
+    }
+
+    public static Profile profile(long[] a) {
+        return profile(a, new long[SAMPLE_SIZE]);
+    }
+
+    /**
+     * @param sample    buffer for the sample, of {@link #SAMPLE_SIZE} items
+     */
+    static Profile profile(long[] a, long[] sample) {
+        assert sample.length == SAMPLE_SIZE;
+        int n = a.length, limit = n / RUN_RATIO;
+
+        int descents = 0, ascents = 0;
+        for (int i = 1; i < n && (descents <= limit || ascents <= limit); i++) {
+            if (a[i - 1] > a[i])
+                descents++;
+            else if (a[i - 1] < a[i])
+                ascents++;
+        }
+        if (descents == 0 || n <= SmallSort.CUTOFF)
+            return new Profile(n, descents, ascents, 0, 0);
+
+        SplittableRandom random = new SplittableRandom(n);
+        int inverted = 0;
+        for (int s = 0; s < SAMPLE_SIZE; s++) {
+            int i = random.nextInt(n), j = random.nextInt(n);
+            if (a[Math.min(i, j)] > a[Math.max(i, j)])
+                inverted++;
+        }
+
+        for (int s = 0; s < SAMPLE_SIZE; s++)
+            sample[s] = a[random.nextInt(n)];
+        Quick.sort(sample);
+        int equal = 0;
+        for (int s = 1; s < SAMPLE_SIZE; s++) {
+            if (sample[s - 1] == sample[s])
+                equal++;
+        }
+
+        return new Profile(n, descents, ascents, (double) inverted / SAMPLE_SIZE, (double) equal / SAMPLE_SIZE);
+    }
+
+    public static Profile profile(double[] a) {
+        return profile(a, new double[SAMPLE_SIZE]);
+    }
+
+    /**
+     * @param sample    buffer for the sample, of {@link #SAMPLE_SIZE} items
+     */
+    static Profile profile(double[] a, double[] sample) {
+        assert sample.length == SAMPLE_SIZE;
+        int n = a.length, limit = n / RUN_RATIO;
+
+        int descents = 0, ascents = 0;
+        for (int i = 1; i < n && (descents <= limit || ascents <= limit); i++) {
+            int c = Double.compare(a[i - 1], a[i]);
+            if (c > 0)
+                descents++;
+            else if (c < 0)
+                ascents++;
+        }
+        if (descents == 0 || n <= SmallSort.CUTOFF)
+            return new Profile(n, descents, ascents, 0, 0);
+
+        SplittableRandom random = new SplittableRandom(n);
+        int inverted = 0;
+        for (int s = 0; s < SAMPLE_SIZE; s++) {
+            int i = random.nextInt(n), j = random.nextInt(n);
+            if (Double.compare(a[Math.min(i, j)], a[Math.max(i, j)]) > 0)
+                inverted++;
+        }
+
+        for (int s = 0; s < SAMPLE_SIZE; s++)
+            sample[s] = a[random.nextInt(n)];
+        Quick.sort(sample);
+        int equal = 0;
+        for (int s = 1; s < SAMPLE_SIZE; s++) {
+            if (Double.compare(sample[s - 1], sample[s]) == 0)
+                equal++;
+        }
+
+        return new Profile(n, descents, ascents, (double) inverted / SAMPLE_SIZE, (double) equal / SAMPLE_SIZE);
+    }
+
+    private static void reverse(int[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--)
+            Utility.swap(a, i, j);
+    }
+
+    private static void reverse(long[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--)
+            Utility.swap(a, i, j);
+    }
+
+    private static void reverse(double[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--)
+            Utility.swap(a, i, j);
+    }
+
+    @SuppressWarnings("Duplicates")
+    public static void main(String[] args) {
+        Integer[] array = Utility.randomIntArray(32);
+
+        System.out.println("Before:");
+        Utility.printArray(array);
+
+        System.out.println("Sorted with " + sort(array));
+        assert Utility.isSorted(array);
+        Utility.printArray(array);
+
+        System.out.println("Sorted again with " + sort(array));
+
+        int[] ints = new int[100_000];
+        for (int i = 0; i < ints.length; i++)
+            ints[i] = ints.length - i;
+        System.out.println(profile(ints) + ": " + sort(ints));
+        assert Utility.isSorted(ints);
+
+        for (int i = 0; i < ints.length; i++)
+            ints[i] = (i * 7919) % ints.length;
+        System.out.println(profile(ints) + ": " + sort(ints));
+        assert Utility.isSorted(ints);
+    }
+}
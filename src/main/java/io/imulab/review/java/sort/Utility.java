@@ -31,12 +31,97 @@ public class Utility {
         return true;
     }
 
+    static boolean isSorted(int[] elements) {
+        return isSorted(elements, 0, elements.length);
+    }
+
+    static boolean isSorted(int[] elements, int startInclusive, int endExclusive) {
+        assert startInclusive >= 0;
+        assert endExclusive <= elements.length;
+
+        for (int i = startInclusive; i + 1 < endExclusive; i++) {
+            if (elements[i] > elements[i + 1])
+                return false;
+        }
+
+        return true;
+    }
+
+    static boolean isSorted(long[] elements) {
+        return isSorted(elements, 0, elements.length);
+    }
+
+    static boolean isSorted(long[] elements, int startInclusive, int endExclusive) {
+        assert startInclusive >= 0;
+        assert endExclusive <= elements.length;
+
+        for (int i = startInclusive; i + 1 < endExclusive; i++) {
+            if (elements[i] > elements[i + 1])
+                return false;
+        }
+
+        return true;
+    }
+
+    static boolean isSorted(double[] elements) {
+        return isSorted(elements, 0, elements.length);
+    }
+
+    /**
+     * Doubles are ordered the same way {@link Double#compareTo(Double)} orders them: -0.0 before 0.0, and NaN last.
+     */
+    static boolean isSorted(double[] elements, int startInclusive, int endExclusive) {
+        assert startInclusive >= 0;
+        assert endExclusive <= elements.length;
+
+        for (int i = startInclusive; i + 1 < endExclusive; i++) {
+            if (Double.compare(elements[i], elements[i + 1]) > 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare two items, reporting the compare to the metrics.
+     */
+    static <E extends Comparable<E>> int compare(E v, E w, SortMetrics metrics) {
+        metrics.compare();
+        return v.compareTo(w);
+    }
+
+    /**
+     * Swap two items, reporting the swap to the metrics.
+     */
+    static void swap(Object[] elements, int i, int j, SortMetrics metrics) {
+        metrics.swap();
+        swap(elements, i, j);
+    }
+
     public static void swap(Object[] elements, int i, int j) {
         Object temp = elements[i];
         elements[i] = elements[j];
         elements[j] = temp;
     }
 
+    public static void swap(int[] elements, int i, int j) {
+        int temp = elements[i];
+        elements[i] = elements[j];
+        elements[j] = temp;
+    }
+
+    public static void swap(long[] elements, int i, int j) {
+        long temp = elements[i];
+        elements[i] = elements[j];
+        elements[j] = temp;
+    }
+
+    public static void swap(double[] elements, int i, int j) {
+        double temp = elements[i];
+        elements[i] = elements[j];
+        elements[j] = temp;
+    }
+
     public static void printArray(Object[] elements) {
         System.out.print("[");
 
@@ -0,0 +1,308 @@
+package io.imulab.review.java.sort.application;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Approximate quantiles of a stream of doubles in a small, bounded amount of memory: a KLL sketch (Karnin, Lang and
+ * Liberty, 2016).
+ *
+ * Items are kept in a stack of compactors. An item at level h stands for 2^h items of the stream. New items go to
+ * level 0, and when the sketch is full, the lowest level over its capacity is compacted: it is sorted, and every other
+ * item, starting at a random one of the first two, moves up one level with twice the weight. Level h holds about
+ * k * (2/3)^(H-1-h) items, where H is the number of levels, so the sketch keeps O(k) items for a rank error of about
+ * 1.7/k with high probability (about 1% for the default k of 200).
+ *
+ * Updates append to a buffer, and are amortised O(lgk). Sketches of parallel workers are combined with
+ * {@link #merge(QuantileSketch)}, which gives the same guarantees as a single sketch over the combined streams. NaN is
+ * ignored. Not thread safe.
+ */
+public class QuantileSketch {
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private final SplittableRandom random;
+
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private int height;
+
+    private int size;
+    private int maxSize;
+    private long count;
+    private double min = Double.NaN, max = Double.NaN;
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    /**
+     * @param k     the accuracy parameter, the capacity of the top level
+     */
+    public QuantileSketch(int k) {
+        this(k, new SplittableRandom());
+    }
+
+    /**
+     * @param k         the accuracy parameter, the capacity of the top level
+     * @param random    source of the coin flips of the compactions, seeded for reproducible sketches
+     */
+    public QuantileSketch(int k, SplittableRandom random) {
+        if (k < 8)
+            throw new IllegalArgumentException("k must be at least 8");
+
+        this.k = k;
+        this.random = random;
+        grow();
+    }
+
+    public void update(double value) {
+        if (Double.isNaN(value))
+            return;
+
+        if (count++ == 0)
+            min = max = value;
+        else if (value < min)
+            min = value;
+        else if (value > max)
+            max = value;
+
+        append(0, value);
+        if (++size >= maxSize)
+            compress();
+    }
+
+    /**
+     * Add the items of another sketch to this one. Both must have the same k.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != k)
+            throw new IllegalArgumentException("cannot merge sketches of different k");
+        if (other.count == 0)
+            return;
+
+        while (height < other.height)
+            grow();
+
+        for (int h = 0; h < other.height; h++) {
+            for (int i = 0; i < other.sizes[h]; i++)
+                append(h, other.levels[h][i]);
+        }
+
+        min = (count == 0) ? other.min : Math.min(min, other.min);
+        max = (count == 0) ? other.max : Math.max(max, other.max);
+        count += other.count;
+        size += other.size;
+
+        while (size >= maxSize)
+            compress();
+    }
+
+    /**
+     * @return  the approximate fraction of the stream that is at most the value.
+     */
+    public double rank(double value) {
+        if (count == 0)
+            return Double.NaN;
+
+        long weight = 0;
+        for (int h = 0; h < height; h++) {
+            double[] level = levels[h];
+            int below = 0;
+            for (int i = 0; i < sizes[h]; i++) {
+                if (level[i] <= value)
+                    below++;
+            }
+            weight += (long) below << h;
+        }
+
+        return (double) weight / count;
+    }
+
+    /**
+     * @param q     a fraction between 0 and 1, such as 0.99 for the 99th percentile
+     * @return      the approximate q-quantile of the stream, or NaN if it is empty.
+     */
+    public double quantile(double q) {
+        return quantiles(q)[0];
+    }
+
+    /**
+     * The quantiles for several fractions at once, sharing one pass over the sorted items.
+     */
+    public double[] quantiles(double... qs) {
+        double[] result = new double[qs.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        // all items in order, with the running total of their weights
+        double[] values = new double[size];
+        long[] cumulative = new long[size];
+        sortedView(values, cumulative);
+
+        for (int i = 0; i < qs.length; i++) {
+            double q = qs[i];
+            if (q < 0 || q > 1)
+                throw new IllegalArgumentException("quantile must be between 0 and 1");
+
+            if (q == 0) {
+                result[i] = min;
+            } else if (q == 1) {
+                result[i] = max;
+            } else {
+                // the first item whose cumulative weight reaches q of the total
+                long target = (long) Math.ceil(q * cumulative[size - 1]);
+                int j = Arrays.binarySearch(cumulative, target);
+                result[i] = values[(j >= 0) ? j : -j - 1];
+            }
+        }
+
+        return result;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    /**
+     * @return  the number of items retained.
+     */
+    public int retained() {
+        return size;
+    }
+
+    private int capacity(int h) {
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, height - 1 - h)));
+    }
+
+    /**
+     * Add a level on top. The capacities of the levels below shrink, as they are relative to the top.
+     */
+    private void grow() {
+        height++;
+        levels = Arrays.copyOf(levels, height);
+        sizes = Arrays.copyOf(sizes, height);
+        levels[height - 1] = new double[8];
+
+        maxSize = 0;
+        for (int h = 0; h < height; h++)
+            maxSize += capacity(h);
+    }
+
+    private void append(int h, double value) {
+        if (sizes[h] == levels[h].length)
+            levels[h] = Arrays.copyOf(levels[h], 2 * levels[h].length);
+        levels[h][sizes[h]++] = value;
+    }
+
+    /**
+     * Compact the lowest level over its capacity. There is one, since the sketch being full means the sizes add up to
+     * at least the capacities.
+     */
+    private void compress() {
+        for (int h = 0; h < height; h++) {
+            if (sizes[h] >= capacity(h)) {
+                if (h + 1 == height)
+                    grow();
+                compact(h);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sort level h and promote every other item to level h+1. If the level holds an odd number of items, the last one
+     * stays behind, so that the weight of the sketch is unchanged.
+     */
+    private void compact(int h) {
+        double[] level = levels[h];
+        int n = sizes[h], even = n & ~1;
+
+        Arrays.sort(level, 0, even);
+        for (int i = random.nextBoolean() ? 1 : 0; i < even; i += 2)
+            append(h + 1, level[i]);
+
+        if (n != even)
+            level[0] = level[n - 1];
+        sizes[h] = n - even;
+        size -= even / 2;
+    }
+
+    /**
+     * Fill values with all retained items in order, and cumulative with the running total of their weights.
+     */
+    private void sortedView(double[] values, long[] cumulative) {
+        long[] weights = new long[size];
+
+        int n = 0;
+        for (int h = 0; h < height; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        }
+
+        // sort the items along with their weights: heap sort on the pairs
+        for (int j = n / 2 - 1; j >= 0; j--)
+            sink(values, weights, j, n);
+        for (int end = n - 1; end > 0; end--) {
+            swap(values, weights, 0, end);
+            sink(values, weights, 0, end);
+        }
+
+        long total = 0;
+        for (int i = 0; i < n; i++)
+            cumulative[i] = total += weights[i];
+    }
+
+    private static void sink(double[] values, long[] weights, int k, int n) {
+        int child;
+        while ((child = 2 * k + 1) < n) {
+            if (child + 1 < n && values[child] < values[child + 1])
+                child++;
+            if (values[k] >= values[child])
+                break;
+            swap(values, weights, k, child);
+            k = child;
+        }
+    }
+
+    private static void swap(double[] values, long[] weights, int i, int j) {
+        double v = values[i];
+        values[i] = values[j];
+        values[j] = v;
+
+        long w = weights[i];
+        weights[i] = weights[j];
+        weights[j] = w;
+    }
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(42);
+
+        // two workers, each seeing half of the stream
+        QuantileSketch a = new QuantileSketch(200, random.split()), b = new QuantileSketch(200, random.split());
+        for (int i = 0; i < 1_000_000; i++)
+            ((i % 2 == 0) ? a : b).update(random.nextDouble() * 1000);
+        a.merge(b);
+
+        double[] qs = {0.5, 0.9, 0.99, 0.999};
+        double[] estimates = a.quantiles(qs);
+        for (int i = 0; i < qs.length; i++) {
+            assert Math.abs(estimates[i] - qs[i] * 1000) < 20;
+            System.out.println("p" + qs[i] * 100 + ": " + estimates[i]);
+        }
+        System.out.println(a.count() + " items, " + a.retained() + " retained");
+    }
+}
@@ -2,16 +2,111 @@ package io.imulab.review.java.sort.application;
 
 import io.imulab.review.java.sort.Utility;
 
+import java.util.Arrays;
+
 /**
  * Use quick sort like algorithm to select kth item in an array.
+ *
+ * Partition around a pivot as quick sort does, but only carry on into the side that holds rank k, which is O(N) on
+ * average. To keep it linear whatever the input:
+ *
+ *  - The pivot is the median of three, or Tukey's ninther, so sorted and reversed input are not a problem.
+ *  - Large ranges use Floyd-Rivest sampling: a small range around k is selected first, which puts a pivot very close
+ *    to rank k, so that a single partition throws away almost all of the range.
+ *  - If after 2lgN partitions the range is still not small, pivots switch to the median of medians, which always
+ *    splits at least 30/70 (introselect).
+ *
+ * Afterwards the array is partitioned around the selected item: a[0..k-1] <= a[k] <= a[k+1..N-1]. Multi-select does
+ * the same for many ranks in one recursive pass, and partial sort leaves the k smallest items sorted in front.
  */
 public class Select {
 
+    /**
+     * Ranges of at most this many items are finished off with insertion sort.
+     */
+    private static final int INSERTION_CUTOFF = 16;
+
+    /**
+     * Ranges of at least this many items use the ninther rather than median of three as pivot.
+     */
+    private static final int NINTHER_THRESHOLD = 40;
+
+    /**
+     * Ranges larger than this are narrowed down by Floyd-Rivest sampling.
+     */
+    private static final int FLOYD_RIVEST_THRESHOLD = 600;
+
     static <E extends Comparable<E>> E select(E[] elements, int k) {
-        int lo = 0, hi = elements.length - 1;
+        if (k < 0 || k >= elements.length)
+            throw new IllegalArgumentException("rank " + k + " is out of range");
+
+        select(elements, 0, elements.length - 1, k, depthLimit(elements.length));
+        return elements[k];
+    }
+
+    /**
+     * Select the items of many ranks at once, such as the 50th, 90th, 99th and 99.9th percentiles. Afterwards a[r] is
+     * the item of rank r for every rank given, and the array is partitioned around each of them.
+     *
+     * Each partition sends the ranks below the pivot to the left and the rest to the right, and a side without ranks
+     * is dropped. The ranks share the partitions near the top, so m ranks cost far less than m separate selects.
+     *
+     * @param elements  array
+     * @param ranks     0-based ranks, in any order
+     * @param <E>       type of array element
+     */
+    static <E extends Comparable<E>> void multiSelect(E[] elements, int... ranks) {
+        int[] sorted = ranks.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0 && (sorted[0] < 0 || sorted[sorted.length - 1] >= elements.length))
+            throw new IllegalArgumentException("ranks are out of range");
+
+        multiSelect(elements, 0, elements.length - 1, sorted, 0, sorted.length - 1, depthLimit(elements.length));
+    }
+
+    /**
+     * Rearrange the array so that its k smallest items come first, in order. The rest of the array is left in no
+     * particular order. O(N + klgk).
+     *
+     * @param elements  array
+     * @param k         number of items to sort, at most the array length
+     * @param <E>       type of array element
+     */
+    static <E extends Comparable<E>> void partialSort(E[] elements, int k) {
+        if (k < 0 || k > elements.length)
+            throw new IllegalArgumentException("k " + k + " is out of range");
+
+        partialSort(elements, 0, elements.length - 1, k, depthLimit(elements.length));
+    }
 
-        while (lo < hi) {
-            int p = partition(elements, lo, hi);
+    /**
+     * Partition a[lo..hi] around its item of rank k.
+     *
+     * @param a     array
+     * @param lo    lower bound (inclusive)
+     * @param hi    upper bound (inclusive)
+     * @param k     the rank to select, within lo..hi
+     * @param depth partitions left before pivots switch to the median of medians
+     * @param <E>   type of array element
+     */
+    private static <E extends Comparable<E>> void select(E[] a, int lo, int hi, int k, int depth) {
+        while (hi - lo >= INSERTION_CUTOFF) {
+            int p;
+            if (depth-- <= 0) {
+                p = partition(a, lo, hi, medianOfMedians(a, lo, hi));
+            } else if (hi - lo + 1 > FLOYD_RIVEST_THRESHOLD) {
+                // select k within a sample around it first, then a[k] is a pivot very close to rank k
+                int n = hi - lo + 1, i = k - lo + 1;
+                double z = Math.log(n);
+                double s = 0.5 * Math.exp(2 * z / 3);
+                double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * Math.signum(i - n / 2.0);
+                int sampleLo = Math.max(lo, Math.min(k, (int) (k - i * s / n + sd)));
+                int sampleHi = Math.min(hi, Math.max(k, (int) (k + (n - i) * s / n + sd)));
+                select(a, sampleLo, sampleHi, k, depth);
+                p = partition(a, lo, hi, k);
+            } else {
+                p = partition(a, lo, hi, pivot(a, lo, hi));
+            }
 
             // if there are (less than k) items below, the item is above.
             if (p < k)
@@ -23,17 +118,74 @@ public class Select {
 
             // we hit jackpot
             else
-                return elements[p];
+                return;
         }
 
-        // here, we have lo = hi = k = pivot
-        return elements[k];
+        insertion(a, lo, hi);
+    }
+
+    /**
+     * Select ranks[from..to], which are sorted and all within lo..hi, in a[lo..hi].
+     */
+    private static <E extends Comparable<E>> void multiSelect(E[] a, int lo, int hi, int[] ranks, int from, int to,
+                                                              int depth) {
+        while (from <= to) {
+            if (ranks[from] == ranks[to]) {
+                select(a, lo, hi, ranks[from], depth);
+                return;
+            }
+            if (hi - lo < INSERTION_CUTOFF) {
+                insertion(a, lo, hi);
+                return;
+            }
+
+            int p = partition(a, lo, hi, (depth-- <= 0) ? medianOfMedians(a, lo, hi) : pivot(a, lo, hi));
+
+            // ranks[from..left-1] < p, ranks[left..right-1] == p, ranks[right..to] > p
+            int left = from;
+            while (left <= to && ranks[left] < p)
+                left++;
+            int right = left;
+            while (right <= to && ranks[right] == p)
+                right++;
+
+            multiSelect(a, lo, p - 1, ranks, from, left - 1, depth);
+            lo = p + 1;
+            from = right;
+        }
+    }
+
+    /**
+     * Sort a[lo..hi] just enough for a[lo..k-1] to hold its smallest items in order: partitions to the left of k are
+     * sorted completely, partitions to the right of k are dropped.
+     */
+    private static <E extends Comparable<E>> void partialSort(E[] a, int lo, int hi, int k, int depth) {
+        while (lo < k && hi - lo >= INSERTION_CUTOFF) {
+            int p = partition(a, lo, hi, (depth-- <= 0) ? medianOfMedians(a, lo, hi) : pivot(a, lo, hi));
+
+            if (p < k - 1) {
+                partialSort(a, lo, p - 1, k, depth);
+                lo = p + 1;
+            } else {
+                hi = p - 1;
+            }
+        }
+
+        if (lo < k)
+            insertion(a, lo, hi);
     }
 
+    /**
+     * Partition a[lo..hi] around the item at index pivot.
+     *
+     * @return  the final index of the pivot.
+     */
     @SuppressWarnings("Duplicates")
-    private static <E extends Comparable<E>> int partition(E[] a, int lo, int hi) {
+    private static <E extends Comparable<E>> int partition(E[] a, int lo, int hi, int pivot) {
         assert a.length > 0;
 
+        Utility.swap(a, lo, pivot);
+
         int i = lo, j = hi + 1;
         while (true) {
             while (a[++i].compareTo(a[lo]) < 0)
@@ -54,4 +206,93 @@ public class Select {
 
         return j;
     }
+
+    /**
+     * Median of medians: the median of the medians of groups of 5, found by a select that uses median of medians
+     * pivots all the way down. At least 3/10 of the range is on either side of it, which bounds the whole select to
+     * O(N).
+     *
+     * @return  index of the pivot
+     */
+    private static <E extends Comparable<E>> int medianOfMedians(E[] a, int lo, int hi) {
+        int groups = 0;
+        for (int g = lo; g <= hi; g += 5, groups++) {
+            int end = Math.min(g + 4, hi);
+            insertion(a, g, end);
+
+            // gather the medians at the front, where the groups have already been looked at
+            Utility.swap(a, lo + groups, (g + end) >>> 1);
+        }
+
+        int mid = lo + (groups - 1) / 2;
+        select(a, lo, lo + groups - 1, mid, 0);
+        return mid;
+    }
+
+    /**
+     * Median of three for small ranges, Tukey's ninther for larger ones.
+     *
+     * @return  index of the pivot
+     */
+    @SuppressWarnings("Duplicates")
+    private static <E extends Comparable<E>> int pivot(E[] a, int lo, int hi) {
+        int n = hi - lo + 1;
+        int mid = lo + (n >>> 1);
+        if (n < NINTHER_THRESHOLD)
+            return median(a, lo, mid, hi);
+
+        int eps = n >>> 3;
+        return median(a,
+                median(a, lo, lo + eps, lo + eps + eps),
+                median(a, mid - eps, mid, mid + eps),
+                median(a, hi - eps - eps, hi - eps, hi));
+    }
+
+    private static <E extends Comparable<E>> int median(E[] a, int i, int j, int k) {
+        return a[i].compareTo(a[j]) < 0 ?
+                (a[j].compareTo(a[k]) < 0 ? j : a[i].compareTo(a[k]) < 0 ? k : i) :
+                (a[k].compareTo(a[j]) < 0 ? j : a[k].compareTo(a[i]) < 0 ? k : i);
+    }
+
+    private static <E extends Comparable<E>> void insertion(E[] a, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            E v = a[i];
+            int j = i;
+            for (; j > lo && v.compareTo(a[j - 1]) < 0; j--)
+                a[j] = a[j - 1];
+            a[j] = v;
+        }
+    }
+
+    /**
+     * @return  the number of partitions allowed before switching to the median of medians, which is 2lgN.
+     */
+    private static int depthLimit(int n) {
+        return 2 * (31 - Integer.numberOfLeadingZeros(Math.max(n, 1)));
+    }
+
+    @SuppressWarnings("Duplicates")
+    public static void main(String[] args) {
+        Integer[] array = Utility.randomIntArray(32);
+
+        System.out.println("Before:");
+        Utility.printArray(array);
+
+        System.out.println("Median: " + select(array, array.length / 2));
+
+        partialSort(array, 8);
+        System.out.println("8 smallest first:");
+        Utility.printArray(array);
+
+        // p50, p90, p99 and p999 of 0..99999, from sorted input
+        Integer[] latencies = new Integer[100_000];
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = i;
+        int[] ranks = {50_000, 90_000, 99_000, 99_900};
+        multiSelect(latencies, ranks);
+        for (int r : ranks) {
+            assert latencies[r] == r;
+            System.out.println("rank " + r + ": " + latencies[r]);
+        }
+    }
 }
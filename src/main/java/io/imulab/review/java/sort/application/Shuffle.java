@@ -2,21 +2,367 @@ package io.imulab.review.java.sort.application;
 
 import io.imulab.review.java.sort.Utility;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Uniform random shuffles, reproducible from a seeded {@link SplittableRandom}.
+ *
+ * The sequential shuffle is Fisher-Yates (Knuth's shuffle). The parallel shuffle is MergeShuffle (Bacher, Bodini,
+ * Hollender and Lumbroso, 2015): the array is cut in halves until the blocks are small, the blocks are Fisher-Yates
+ * shuffled in parallel, and pairs of shuffled halves are then merged by coin flips, which is again a uniform shuffle.
+ * Every task gets its own generator, split off its parent's in a fixed order, so the result only depends on the seed
+ * and the threshold, not on the pool or on how the tasks were scheduled. It is not the same permutation as the
+ * sequential shuffle with the same seed.
+ */
 public class Shuffle {
 
+    /**
+     * Arrays of at most this many items are shuffled sequentially by the parallel shuffle, and so are its blocks.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    public static <E> void knuthShuffle(E[] elements) {
+        knuthShuffle(elements, new SplittableRandom());
+    }
+
     /**
      * Similar to insertion sort. Cursor moves from left to right. Left portion is already shuffled. Randomly select
-     * and index in the left portion and swap with cursor.
+     * an index in the left portion, the cursor included, and swap with cursor.
      *
      * @param elements  array to be shuffled.
+     * @param random    source of randomness
      * @param <E>       type of array.
      */
-    public static <E extends Comparable<E>> void knuthShuffle(E[] elements) {
-        for (int i = 1; i < elements.length; i++) {
-            int r = ThreadLocalRandom.current().nextInt(0, i);
-            Utility.swap(elements, i, r);
+    public static <E> void knuthShuffle(E[] elements, SplittableRandom random) {
+        knuthShuffle(elements, 0, elements.length, random);
+    }
+
+    public static void knuthShuffle(int[] elements, SplittableRandom random) {
+        knuthShuffle(elements, 0, elements.length, random);
+    }
+
+    public static void knuthShuffle(long[] elements, SplittableRandom random) {
+        knuthShuffle(elements, 0, elements.length, random);
+    }
+
+    public static void knuthShuffle(double[] elements, SplittableRandom random) {
+        knuthShuffle(elements, 0, elements.length, random);
+    }
+
+    public static <E> void parallelShuffle(E[] elements, SplittableRandom random) {
+        parallelShuffle(elements, random, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Shuffle the array on the fork/join pool.
+     *
+     * @param elements  array to be shuffled
+     * @param random    source of randomness
+     * @param threshold blocks of at most this many items are Fisher-Yates shuffled
+     * @param pool      the pool to run the tasks on
+     * @param <E>       type of array
+     */
+    public static <E> void parallelShuffle(E[] elements, SplittableRandom random, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+        pool.invoke(new ObjectShuffleTask(elements, 0, elements.length, random, threshold));
+    }
+
+    public static void parallelShuffle(int[] elements, SplittableRandom random) {
+        parallelShuffle(elements, random, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static void parallelShuffle(int[] elements, SplittableRandom random, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+        pool.invoke(new IntShuffleTask(elements, 0, elements.length, random, threshold));
+    }
+
+    public static void parallelShuffle(long[] elements, SplittableRandom random) {
+        parallelShuffle(elements, random, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static void parallelShuffle(long[] elements, SplittableRandom random, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+        pool.invoke(new LongShuffleTask(elements, 0, elements.length, random, threshold));
+    }
+
+    public static void parallelShuffle(double[] elements, SplittableRandom random) {
+        parallelShuffle(elements, random, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public static void parallelShuffle(double[] elements, SplittableRandom random, int threshold, ForkJoinPool pool) {
+        assert threshold > 0;
+        pool.invoke(new DoubleShuffleTask(elements, 0, elements.length, random, threshold));
+    }
+
+    /**
+     * Fisher-Yates shuffle of a[lo, hi).
+     */
+    private static void knuthShuffle(Object[] a, int lo, int hi, SplittableRandom random) {
+        for (int i = lo + 1; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    /**
+     * Merge the shuffled runs a[lo, mid) and a[mid, hi) into a shuffle of a[lo, hi). A coin flip decides whether the
+     * next item comes from the left run (it is already in place) or from the right run (it is swapped in). Once a run
+     * runs out, each of the remaining items is swapped with a random one of the items before it, as in Fisher-Yates.
+     */
+    private static void merge(Object[] a, int lo, int mid, int hi, SplittableRandom random) {
+        Coins coins = new Coins(random);
+
+        int i = lo, j = mid;
+        while (true) {
+            if (coins.flip()) {
+                if (j == hi)
+                    break;
+                Utility.swap(a, i, j++);
+            } else if (i == j) {
+                break;
+            }
+            i++;
+        }
+
+        for (; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    private static void knuthShuffle(int[] a, int lo, int hi, SplittableRandom random) {
+        for (int i = lo + 1; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    private static void merge(int[] a, int lo, int mid, int hi, SplittableRandom random) {
+        Coins coins = new Coins(random);
+
+        int i = lo, j = mid;
+        while (true) {
+            if (coins.flip()) {
+                if (j == hi)
+                    break;
+                Utility.swap(a, i, j++);
+            } else if (i == j) {
+                break;
+            }
+            i++;
+        }
+
+        for (; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    private static void knuthShuffle(long[] a, int lo, int hi, SplittableRandom random) {
+        for (int i = lo + 1; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    private static void merge(long[] a, int lo, int mid, int hi, SplittableRandom random) {
+        Coins coins = new Coins(random);
+
+        int i = lo, j = mid;
+        while (true) {
+            if (coins.flip()) {
+                if (j == hi)
+                    break;
+                Utility.swap(a, i, j++);
+            } else if (i == j) {
+                break;
+            }
+            i++;
+        }
+
+        for (; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    private static void knuthShuffle(double[] a, int lo, int hi, SplittableRandom random) {
+        for (int i = lo + 1; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    private static void merge(double[] a, int lo, int mid, int hi, SplittableRandom random) {
+        Coins coins = new Coins(random);
+
+        int i = lo, j = mid;
+        while (true) {
+            if (coins.flip()) {
+                if (j == hi)
+                    break;
+                Utility.swap(a, i, j++);
+            } else if (i == j) {
+                break;
+            }
+            i++;
+        }
+
+        for (; i < hi; i++)
+            Utility.swap(a, i, lo + random.nextInt(i - lo + 1));
+    }
+
+    /**
+     * Fair coin flips, 64 to a random long.
+     */
+    private static final class Coins {
+
+        private final SplittableRandom random;
+        private long bits;
+        private int left;
+
+        Coins(SplittableRandom random) {
+            this.random = random;
+        }
+
+        boolean flip() {
+            if (left == 0) {
+                bits = random.nextLong();
+                left = Long.SIZE;
+            }
+            left--;
+
+            boolean heads = (bits & 1) != 0;
+            bits >>>= 1;
+            return heads;
+        }
+    }
+
+    /**
+     * Shuffles [lo, hi) of the array: small ranges with Fisher-Yates, larger ones by shuffling both halves in parallel
+     * and merging them. The array type specific work is left to the subclasses.
+     */
+    private abstract static class ShuffleTask extends RecursiveAction {
+
+        final int lo, hi, threshold;
+        final SplittableRandom random;
+
+        ShuffleTask(int lo, int hi, SplittableRandom random, int threshold) {
+            this.lo = lo;
+            this.hi = hi;
+            this.random = random;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= threshold) {
+                shuffle();
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+
+            // split in a fixed order, before forking, so that scheduling cannot change the outcome
+            ShuffleTask left = subtask(lo, mid, random.split());
+            ShuffleTask right = subtask(mid, hi, random.split());
+            invokeAll(left, right);
+
+            merge(mid);
+        }
+
+        abstract ShuffleTask subtask(int lo, int hi, SplittableRandom random);
+
+        abstract void shuffle();
+
+        abstract void merge(int mid);
+    }
+
+    private static final class ObjectShuffleTask extends ShuffleTask {
+
+        private final Object[] a;
+
+        ObjectShuffleTask(Object[] a, int lo, int hi, SplittableRandom random, int threshold) {
+            super(lo, hi, random, threshold);
+            this.a = a;
+        }
+
+        @Override
+        ShuffleTask subtask(int lo, int hi, SplittableRandom random) {
+            return new ObjectShuffleTask(a, lo, hi, random, threshold);
+        }
+
+        @Override
+        void shuffle() {
+            knuthShuffle(a, lo, hi, random);
+        }
+
+        @Override
+        void merge(int mid) {
+            Shuffle.merge(a, lo, mid, hi, random);
+        }
+    }
+
+    private static final class IntShuffleTask extends ShuffleTask {
+
+        private final int[] a;
+
+        IntShuffleTask(int[] a, int lo, int hi, SplittableRandom random, int threshold) {
+            super(lo, hi, random, threshold);
+            this.a = a;
+        }
+
+        @Override
+        ShuffleTask subtask(int lo, int hi, SplittableRandom random) {
+            return new IntShuffleTask(a, lo, hi, random, threshold);
+        }
+
+        @Override
+        void shuffle() {
+            knuthShuffle(a, lo, hi, random);
+        }
+
+        @Override
+        void merge(int mid) {
+            Shuffle.merge(a, lo, mid, hi, random);
+        }
+    }
+
+    private static final class LongShuffleTask extends ShuffleTask {
+
+        private final long[] a;
+
+        LongShuffleTask(long[] a, int lo, int hi, SplittableRandom random, int threshold) {
+            super(lo, hi, random, threshold);
+            this.a = a;
+        }
+
+        @Override
+        ShuffleTask subtask(int lo, int hi, SplittableRandom random) {
+            return new LongShuffleTask(a, lo, hi, random, threshold);
+        }
+
+        @Override
+        void shuffle() {
+            knuthShuffle(a, lo, hi, random);
+        }
+
+        @Override
+        void merge(int mid) {
+            Shuffle.merge(a, lo, mid, hi, random);
+        }
+    }
+
+    private static final class DoubleShuffleTask extends ShuffleTask {
+
+        private final double[] a;
+
+        DoubleShuffleTask(double[] a, int lo, int hi, SplittableRandom random, int threshold) {
+            super(lo, hi, random, threshold);
+            this.a = a;
+        }
+
+        @Override
+        ShuffleTask subtask(int lo, int hi, SplittableRandom random) {
+            return new DoubleShuffleTask(a, lo, hi, random, threshold);
+        }
+
+        @Override
+        void shuffle() {
+            knuthShuffle(a, lo, hi, random);
+        }
+
+        @Override
+        void merge(int mid) {
+            Shuffle.merge(a, lo, mid, hi, random);
         }
     }
 
@@ -26,9 +372,17 @@ public class Shuffle {
         System.out.println("Before:");
         Utility.printArray(array);
 
-        knuthShuffle(array);
+        knuthShuffle(array, new SplittableRandom(42));
 
         System.out.println("After:");
         Utility.printArray(array);
+
+        // the same seed gives the same shuffle, whatever the pool
+        int[] a = new int[1 << 20], b = new int[1 << 20];
+        for (int i = 0; i < a.length; i++)
+            a[i] = b[i] = i;
+        parallelShuffle(a, new SplittableRandom(42), 1 << 12, ForkJoinPool.commonPool());
+        parallelShuffle(b, new SplittableRandom(42), 1 << 12, new ForkJoinPool(3));
+        assert java.util.Arrays.equals(a, b);
     }
 }
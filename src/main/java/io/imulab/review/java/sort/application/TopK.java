@@ -0,0 +1,133 @@
+package io.imulab.review.java.sort.application;
+
+import io.imulab.review.java.sort.Heap;
+import io.imulab.review.java.sort.Utility;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the k largest items of a stream of any length, by a comparator.
+ *
+ * The items are kept in a 1-based min heap of capacity k, built on {@link Heap#sink(Object[], int, int, Comparator)}
+ * and {@link Heap#swim(Object[], int, Comparator)} with the order reversed. Its root is the smallest item of the
+ * current top k, so an item only gets in if it beats the root, and then takes its place. Once the heap is full, that's
+ * a single compare for most items of a long stream, and O(lgk) for the others. Offering allocates nothing.
+ *
+ * The top k of parallel workers are combined with {@link #merge(TopK)}. Not thread safe.
+ *
+ * @param <E>   type of the items
+ */
+public class TopK<E> {
+
+    private final E[] heap;
+    private final Comparator<? super E> comparator;
+    private final Comparator<? super E> order;
+    private int size;
+
+    /**
+     * @param k             number of items to keep
+     * @param comparator    order in which the largest items are kept
+     */
+    @SuppressWarnings("unchecked")
+    public TopK(int k, Comparator<? super E> comparator) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+
+        // index 0 is not used
+        this.heap = (E[]) new Object[k + 1];
+        this.comparator = comparator;
+
+        // the heap keeps its largest item at the root, so reverse the order for a min heap
+        this.order = comparator.reversed();
+    }
+
+    public static <E extends Comparable<? super E>> TopK<E> largest(int k) {
+        return new TopK<>(k, Comparator.naturalOrder());
+    }
+
+    public static <E extends Comparable<? super E>> TopK<E> smallest(int k) {
+        return new TopK<>(k, Comparator.reverseOrder());
+    }
+
+    /**
+     * Offer an item of the stream.
+     *
+     * @return  true if the item is now among the top k.
+     */
+    public boolean offer(E item) {
+        if (size < heap.length - 1) {
+            heap[++size] = item;
+            Heap.swim(heap, size, order);
+            return true;
+        }
+
+        if (comparator.compare(item, heap[1]) <= 0)
+            return false;
+
+        heap[1] = item;
+        Heap.sink(heap, 1, size, order);
+        return true;
+    }
+
+    /**
+     * Offer all items kept by another top k, such as the one of another worker.
+     */
+    public void merge(TopK<? extends E> other) {
+        for (int i = 1; i <= other.size; i++)
+            offer(other.heap[i]);
+    }
+
+    /**
+     * @return  the smallest item of the top k, which an item has to beat to get in once there are k items, or null if
+     *          there are none yet.
+     */
+    public E threshold() {
+        return (size == 0) ? null : heap[1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return heap.length - 1;
+    }
+
+    public void clear() {
+        Arrays.fill(heap, 1, size + 1, null);
+        size = 0;
+    }
+
+    /**
+     * @return  the items kept, largest first.
+     */
+    public List<E> toList() {
+        E[] sorted = Arrays.copyOf(heap, size + 1);
+
+        // sort down: the smallest item at the root goes to the end each time
+        for (int n = size; n > 1; ) {
+            Utility.swap(sorted, 1, n--);
+            Heap.sink(sorted, 1, n, order);
+        }
+
+        return Arrays.asList(sorted).subList(1, size + 1);
+    }
+
+    public static void main(String[] args) {
+        TopK<Integer> even = TopK.largest(5), odd = TopK.largest(5);
+        for (int i = 0; i < 1_000_000; i++) {
+            int v = ThreadLocalRandom.current().nextInt(1_000_000_000);
+            ((v % 2 == 0) ? even : odd).offer(v);
+        }
+
+        even.merge(odd);
+        List<Integer> top = even.toList();
+        for (int i = 1; i < top.size(); i++)
+            assert top.get(i - 1) >= top.get(i);
+
+        System.out.println("Top 5: " + top);
+    }
+}